@@ -0,0 +1,224 @@
+package db61b;
+
+import static db61b.Utils.*;
+
+/** An aggregate function of a select clause, such as count(SID) or
+ *  avg(Year), which summarizes the values of one column over each group
+ *  of rows of a query's result.
+ *  @author Bo Liu
+ */
+class Aggregate {
+
+    /** The aggregate functions. */
+    enum Function {
+        /** The number of rows. */
+        COUNT,
+        /** The sum of numeric values. */
+        SUM,
+        /** The least value. */
+        MIN,
+        /** The greatest value. */
+        MAX,
+        /** The mean of numeric values. */
+        AVG;
+
+        /** Return the Function named NAME, or null if there is none. */
+        static Function parse(String name) {
+            for (Function function : values()) {
+                if (function.toString().equals(name)) {
+                    return function;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** FUNCTION applied to the column named COLUMNNAME, or, if
+     *  COLUMNNAME is null, to whole rows, which is allowed only for
+     *  COUNT. */
+    Aggregate(Function function, String columnName) {
+        if (columnName == null && function != Function.COUNT) {
+            throw error("%s requires a column", function);
+        }
+        _function = function;
+        _columnName = columnName;
+    }
+
+    /** Return my function. */
+    Function function() {
+        return _function;
+    }
+
+    /** Return the name of the column I summarize, or null if I count
+     *  whole rows. */
+    String columnName() {
+        return _columnName;
+    }
+
+    /** Return the title of my column in a query's result: the name of my
+     *  function, followed by an underscore and the name of my column if I
+     *  have one. */
+    String title() {
+        if (_columnName == null) {
+            return _function.toString();
+        }
+        return _function + "_" + _columnName;
+    }
+
+    /** Return the type of my values when I summarize a column of type
+     *  TYPE. */
+    Type type(Type type) {
+        switch (_function) {
+        case COUNT:
+            return Type.INT;
+        case SUM:
+            return type == Type.INT ? Type.INT : Type.DOUBLE;
+        case AVG:
+            return Type.DOUBLE;
+        default:
+            return type;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", _function,
+                             _columnName == null ? "*" : _columnName);
+    }
+
+    /** Accumulates the value of an Aggregate over one group of tuples. */
+    static class Accumulator {
+        /** An empty accumulator for FUNCTION of COLUMN, whose values have
+         *  type TYPE.  COLUMN is null if FUNCTION counts whole tuples. */
+        Accumulator(Function function, Column column, Type type) {
+            _function = function;
+            _column = column;
+            _type = type;
+        }
+
+        /** Include TUPLE in my group. */
+        void add(Row[] tuple) {
+            _count += 1;
+            if (_column == null) {
+                return;
+            }
+            String value = _column.getFrom(tuple);
+            switch (_function) {
+            case SUM: case AVG:
+                if (_type == Type.INT) {
+                    _integer = add(_integer, Long.parseLong(value));
+                } else {
+                    _number += number(value);
+                }
+                break;
+            case MIN:
+                if (_best == null || _type.compare(value, _best) < 0) {
+                    _best = value;
+                }
+                break;
+            case MAX:
+                if (_best == null || _type.compare(value, _best) > 0) {
+                    _best = value;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        /** Include the tuples accumulated by OTHER, an accumulator for the
+         *  same aggregate, in my group. */
+        void merge(Accumulator other) {
+            _count += other._count;
+            _integer = add(_integer, other._integer);
+            _number += other._number;
+            if (other._best != null
+                && (_best == null
+                    || (_type.compare(other._best, _best) < 0)
+                        == (_function == Function.MIN))) {
+                _best = other._best;
+            }
+        }
+
+        /** Return my value for the tuples added so far.  With no tuples,
+         *  a count or sum is 0, and other aggregates are errors, as are
+         *  sums and averages too large for their types. */
+        String value() {
+            if (_count == 0 && _function != Function.COUNT
+                && _function != Function.SUM) {
+                throw error("%s of no rows", _function);
+            }
+            switch (_function) {
+            case COUNT:
+                return Long.toString(_count);
+            case SUM:
+                return _type == Type.INT ? Long.toString(_integer)
+                    : real(_number);
+            case AVG:
+                return real((_integer + _number) / _count);
+            default:
+                return _best;
+            }
+        }
+
+        /** Return the sum of the integers X and Y, throwing a DBException
+         *  if it does not fit in a long. */
+        private long add(long x, long y) {
+            try {
+                return Math.addExact(x, y);
+            } catch (ArithmeticException e) {
+                throw error("%s out of range", _function);
+            }
+        }
+
+        /** Return X as a DOUBLE value, throwing a DBException if it is
+         *  too large to be one. */
+        private String real(double x) {
+            if (Double.isInfinite(x)) {
+                throw error("%s out of range", _function);
+            }
+            return Double.toString(x);
+        }
+
+        /** Return VALUE as a number, throwing a DBException if it is
+         *  not a valid DOUBLE.  Values of DOUBLE columns are already
+         *  valid; others are checked by the rules of Type.DOUBLE, so that
+         *  NaN, Infinity, and the like are rejected here as in tables. */
+        private double number(String value) {
+            if (_type != Type.DOUBLE) {
+                try {
+                    value = Type.DOUBLE.canonical(value);
+                } catch (DBException e) {
+                    throw error("cannot %s non-numeric value: '%s'",
+                                _function, value);
+                }
+            }
+            return Double.parseDouble(value);
+        }
+
+        /** My function. */
+        private Function _function;
+        /** The column I summarize, or null. */
+        private Column _column;
+        /** The type of the values of _column. */
+        private Type _type;
+        /** Number of tuples added. */
+        private long _count;
+        /** Sum of the values added, if they are integers. */
+        private long _integer;
+        /** Sum of the values added, if they are not integers. */
+        private double _number;
+        /** Least or greatest value added, or null. */
+        private String _best;
+    }
+
+    /** My function. */
+    private Function _function;
+    /** The name of the column I summarize, or null. */
+    private String _columnName;
+}
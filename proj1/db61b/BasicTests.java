@@ -31,6 +31,22 @@ public class BasicTests {
         t.print();
     }
 
+    /** The test for the column dictionaries of the table class. */
+    @Test
+    public void testDictionary() {
+        Row r = new Row(new String[]{"EECS", new String("61B")});
+        String eecs = new String("EECS");
+        String[] data = {eecs, "61C"};
+        Row r2 = new Row(data);
+        Table t = new Table(new String[]{"Dept", "Num"});
+        t.add(r);
+        t.add(r2);
+        assertTrue(r.get(0) == r2.get(0));
+        assertTrue(data[0] == eecs);
+        assertEquals(1, t.distinctValues(0));
+        assertEquals(2, t.distinctValues(1));
+    }
+
     /** The test for the database class.*/
     @Test
     public void testDatabase() {
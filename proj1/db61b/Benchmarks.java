@@ -0,0 +1,658 @@
+package db61b;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/** Timing comparisons between db61b's current code and the simpler code
+ *  it replaced.  Run as
+ *       java db61b.Benchmarks [ROWS]
+ *  where ROWS is the number of rows in the generated tables.
+ *  @author Bo Liu
+ */
+public class Benchmarks {
+
+    /** Default number of rows in a generated table. */
+    private static final int DEFAULT_ROWS = 1_000_000;
+    /** Number of times each benchmark is repeated; the best time is
+     *  reported. */
+    private static final int TRIALS = 3;
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+    /** Bytes per megabyte. */
+    private static final double MEGABYTE = 1 << 20;
+    /** Rows per million rows. */
+    private static final double MEGAROWS = 1e6;
+    /** Maximum number of rows appended to a log by benchmarkLog. */
+    private static final int LOGGED_ROWS = 10_000;
+    /** Number of rows in each batched insert statement of
+     *  benchmarkInsert. */
+    private static final int INSERT_BATCH = 1000;
+    /** Number of lookups made by benchmarkPrepared. */
+    private static final int LOOKUPS = 100_000;
+    /** Number of statements that set up the table of
+     *  benchmarkPrepared. */
+    private static final int SETUP_STATEMENTS = 3;
+    /** Number of times benchmarkCache repeats its select. */
+    private static final int REPEATS = 1000;
+    /** Number of statements in the script of benchmarkTokenizer. */
+    private static final int STATEMENTS = 1_000_000;
+    /** Number of rows inserted by benchmarkView. */
+    private static final int VIEW_INSERTS = 20;
+    /** Statements of the script of benchmarkTokenizer. */
+    private static final String[] SCRIPT = {
+        "insert into T values ('1234', 'Name12', 'EECS', '2010', 'B');\n",
+        "select SID, Lastname from T where Year >= '2010' and Dept = 'Math'"
+        + " order by SID limit 10;\n",
+        "/* A comment. */ select count(*) from T group by Dept;\n",
+    };
+    /** The regular expression with which Tokenizer formerly matched
+     *  tokens. */
+    private static final Pattern TOKEN_PATN =
+        Pattern.compile("(?s)[<>!]?=|'(?:[^,'\n\r]*)'?|[\\p{Alpha}_]\\w*"
+                        + "|\\d+|(?:/\\*.*?\\*/|/\\*.*)|\r?\n|\\S");
+    /** Values for the Dept column of generated tables. */
+    private static final String[] DEPTS = {
+        "EECS", "Math", "LSUnd", "Physics", "Stat", "Music", "History"
+    };
+
+    /** Run the benchmarks on tables of ARGS[0] rows. */
+    public static void main(String... args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        File file = File.createTempFile("bench", ".db");
+        file.deleteOnExit();
+        String name = file.getPath();
+        name = name.substring(0, name.length() - ".db".length());
+        writeSample(file, rows);
+        benchmarkLoad(name, file.length());
+        Table table = Table.readTable(name);
+        benchmarkStore(table, name, file.length());
+        long textLength = file.length();
+        table.writeBinaryTable(name);
+        System.out.printf("text file %.1f MB, binary file %.1f MB%n",
+                          textLength / MEGABYTE, file.length() / MEGABYTE);
+        benchmarkBinaryLoad(name, file.length());
+        benchmarkConditions(table);
+        benchmarkTypedConditions(table);
+        benchmarkAggregate(table);
+        benchmarkSelect(table);
+        benchmarkLog(table, name);
+        table.writeTable(name);
+        benchmarkInsert(table, file);
+        benchmarkTokenizer();
+        benchmarkPrepared(table, file);
+        benchmarkCache(file);
+        benchmarkDedupe(table);
+        benchmarkView(file);
+        benchmarkExplain(table);
+    }
+
+    /** Write a sample table of ROWS rows to FILE. */
+    static void writeSample(File file, int rows) throws IOException {
+        Random random = new Random(rows);
+        PrintStream out = new PrintStream(file);
+        out.print("SID,Lastname,Dept,Year,Grade");
+        for (int i = 0; i < rows; i += 1) {
+            out.printf("%n%d,Name%d,%s,%d,%c", i, random.nextInt(rows / 2 + 1),
+                       DEPTS[random.nextInt(DEPTS.length)],
+                       2000 + random.nextInt(20), 'A' + random.nextInt(5));
+        }
+        out.close();
+    }
+
+    /** Report the rate at which NAME.db, of LENGTH bytes, is loaded by
+     *  Table.readTable and by a line-by-line reader using String.split. */
+    static void benchmarkLoad(String name, long length) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            readBySplitting(name);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("load (readLine and split)", length, best);
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            Table.readTable(name);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("load (Table.readTable)", length, best);
+    }
+
+    /** Report the rate at which TABLE is written to NAME.db, of LENGTH
+     *  bytes, by Table.writeTable. */
+    static void benchmarkStore(Table table, String name, long length) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            table.writeTable(name);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("store (Table.writeTable)", length, best);
+    }
+
+    /** Report the rate at which the binary table NAME.db, of LENGTH
+     *  bytes, is loaded by Table.readTable. */
+    static void benchmarkBinaryLoad(String name, long length) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            Table.readTable(name);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("load binary (Table.readTable)", length, best);
+    }
+
+    /** Report the rate at which the rows of TABLE are tested against a
+     *  list of conditions by Condition.test and by a compiled
+     *  Predicate. */
+    static void benchmarkConditions(Table table) {
+        ArrayList<Condition> conditions = new ArrayList<>();
+        conditions.add(new Condition(new Column("Year", table), ">=",
+                                     "2010"));
+        conditions.add(new Condition(new Column("Grade", table), "!=",
+                                     "E"));
+        conditions.add(new Condition(new Column("Dept", table), "=",
+                                     "EECS"));
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            int n = 0;
+            for (Row row : table) {
+                if (Condition.test(conditions, row)) {
+                    n += 1;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows("scan (Condition.test)", table.size(), best);
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            Predicate predicate = new Predicate(conditions);
+            Row[] tuple = new Row[1];
+            int n = 0;
+            for (Row row : table) {
+                tuple[0] = row;
+                if (predicate.test(tuple)) {
+                    n += 1;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows("scan (Predicate.test)", table.size(), best);
+    }
+
+    /** Report the rate at which a range condition on Year is tested
+     *  by a Predicate on the rows of TABLE, where Year is text, and on a
+     *  copy of TABLE in which Year is an int. */
+    static void benchmarkTypedConditions(Table table) {
+        Table typed = new Table(
+            new String[] { "SID", "Lastname", "Dept", "Year", "Grade" },
+            new Type[] { Type.STRING, Type.STRING, Type.STRING, Type.INT,
+                         Type.STRING });
+        for (Row row : table) {
+            String[] values = new String[row.size()];
+            for (int k = 0; k < values.length; k += 1) {
+                values[k] = row.get(k);
+            }
+            typed.add(new Row(values));
+        }
+        Table[] tables = { table, typed };
+        String[] labels = { "range (string Year)", "range (int Year)" };
+        for (int t = 0; t < tables.length; t += 1) {
+            ArrayList<Condition> conditions = new ArrayList<>();
+            conditions.add(new Condition(new Column("Year", tables[t]), ">=",
+                                         "2010"));
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < TRIALS; i += 1) {
+                long start = System.nanoTime();
+                Predicate predicate = new Predicate(conditions);
+                Row[] tuple = new Row[1];
+                int n = 0;
+                for (Row row : tables[t]) {
+                    tuple[0] = row;
+                    if (predicate.test(tuple)) {
+                        n += 1;
+                    }
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            reportRows(labels[t], tables[t].size(), best);
+        }
+    }
+
+    /** Report the rate at which the rows of TABLE are grouped by Dept
+     *  and summarized by a hash aggregation. */
+    static void benchmarkAggregate(Table table) {
+        ArrayList<String> items = new ArrayList<>();
+        ArrayList<Aggregate> aggregates = new ArrayList<>();
+        items.add("Dept");
+        aggregates.add(null);
+        items.add("count");
+        aggregates.add(new Aggregate(Aggregate.Function.COUNT, null));
+        items.add("avg");
+        aggregates.add(new Aggregate(Aggregate.Function.AVG, "Year"));
+        ArrayList<String> groupBy = new ArrayList<>();
+        groupBy.add("Dept");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            Query query = new Query(new Table[] { table }, items, aggregates,
+                                    groupBy, new ArrayList<Condition>());
+            for (Row row : query) {
+                continue;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows("group by (HashAggregate)", table.size(), best);
+    }
+
+    /** Report the rate at which TABLE is filtered and projected by
+     *  Table.select, which works in parallel on large tables when there
+     *  is more than one worker thread. */
+    static void benchmarkSelect(Table table) {
+        ArrayList<String> columns = new ArrayList<>();
+        columns.add("Lastname");
+        columns.add("Dept");
+        ArrayList<Condition> conditions = new ArrayList<>();
+        conditions.add(new Condition(new Column("Year", table), ">=",
+                                     "2010"));
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            table.select(columns, conditions);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows(String.format("select (%d threads)",
+                                 ForkJoinPool.getCommonPoolParallelism()),
+                   table.size(), best);
+    }
+
+    /** Report the rate at which the rows of TABLE are appended to the
+     *  write-ahead log NAME.log with group commit, and with a commit
+     *  after each row, for at most LOGGED_ROWS rows. */
+    static void benchmarkLog(Table table, String name) {
+        new File(name + ".log").deleteOnExit();
+        for (boolean grouped : new boolean[] { true, false }) {
+            WriteAheadLog wal = new WriteAheadLog();
+            WriteAheadLog.Log log = wal.open(name);
+            long start = System.nanoTime();
+            int n = 0;
+            for (Row row : table) {
+                if (n == LOGGED_ROWS) {
+                    break;
+                }
+                log.append(row);
+                wal.commit(!grouped);
+                n += 1;
+            }
+            wal.commit(true);
+            reportRows(grouped ? "log (group commit)" : "log (commit per row)",
+                       n, System.nanoTime() - start);
+            log.clear();
+        }
+    }
+
+    /** Report the rates at which the rows of TABLE are inserted into an
+     *  empty table by insert statements of one row each, by insert
+     *  statements of INSERT_BATCH rows each, and by copying FILE, a text
+     *  file that contains them. */
+    static void benchmarkInsert(Table table, File file) {
+        StringBuilder single = new StringBuilder();
+        StringBuilder batched = new StringBuilder();
+        int n = 0;
+        for (Row row : table) {
+            String values = String.format("'%s', '%s', '%s', '%s', '%s'",
+                                          row.get(0), row.get(1), row.get(2),
+                                          row.get(3), row.get(4));
+            single.append("insert into T values ").append(values)
+                .append(";\n");
+            batched.append(n % INSERT_BATCH == 0 ? "insert into T values "
+                           : ", ");
+            batched.append('(').append(values).append(')');
+            n += 1;
+            if (n % INSERT_BATCH == 0) {
+                batched.append(";\n");
+            }
+        }
+        if (n % INSERT_BATCH != 0) {
+            batched.append(";\n");
+        }
+        String create = "create table T (SID, Lastname, Dept, Year, Grade);\n";
+        String[] labels = { "insert (one row each)", "insert (batched)",
+                            "copy" };
+        String[] scripts = { create + single, create + batched,
+                             create + "copy T from '" + file.getPath()
+                             + "';\n" };
+        PrintStream stdout = System.out;
+        for (int i = 0; i < scripts.length; i += 1) {
+            long start = System.nanoTime();
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            try {
+                CommandInterpreter interpreter =
+                    new CommandInterpreter(new Scanner(scripts[i]), null);
+                while (interpreter.statement()) {
+                    continue;
+                }
+            } finally {
+                System.setOut(stdout);
+            }
+            reportRows(labels[i], n, System.nanoTime() - start);
+        }
+    }
+
+    /** Report the rates at which LOOKUPS selects of single rows of TABLE,
+     *  whose text is in FILE, by SID run as select statements, and as
+     *  executions of a prepared statement. */
+    static void benchmarkPrepared(Table table, File file) {
+        String query = "select SID, Lastname, Grade from T where SID = ";
+        StringBuilder selects = new StringBuilder();
+        StringBuilder executes =
+            new StringBuilder("prepare q as " + query + "?;\n");
+        Iterator<Row> rows = table.iterator();
+        for (int i = 0; i < LOOKUPS && rows.hasNext(); i += 1) {
+            String sid = rows.next().get(0);
+            selects.append(query).append('\'').append(sid).append("';\n");
+            executes.append("execute q ('").append(sid).append("');\n");
+        }
+        String setup = "create table T (SID, Lastname, Dept, Year, Grade);\n"
+            + "copy T from '" + file.getPath() + "';\n"
+            + "create index on T (SID);\n";
+        String[] labels = { "select by key", "execute by key" };
+        String[] scripts = { selects.toString(), executes.toString() };
+        PrintStream stdout = System.out;
+        for (int i = 0; i < scripts.length; i += 1) {
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            long start;
+            try {
+                CommandInterpreter interpreter =
+                    new CommandInterpreter(new Scanner(setup + scripts[i]),
+                                           null);
+                for (int k = 0; k < SETUP_STATEMENTS; k += 1) {
+                    interpreter.statement();
+                }
+                start = System.nanoTime();
+                while (interpreter.statement()) {
+                    continue;
+                }
+            } finally {
+                System.setOut(stdout);
+            }
+            reportRows(labels[i], LOOKUPS, System.nanoTime() - start);
+        }
+    }
+
+    /** Report the rates at which the rows of TABLE, each followed by an
+     *  equal copy, are deduplicated by a HashSet and by fingerprints,
+     *  and are added to a new table.  Each trial uses new rows, whose
+     *  hash codes have not yet been computed. */
+    static void benchmarkDedupe(Table table) {
+        String[] labels = { "dedupe (HashSet)", "dedupe (fingerprints)" };
+        for (int f = 0; f < labels.length; f += 1) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < TRIALS; i += 1) {
+                ArrayList<Row> rows = copies(table);
+                long start = System.nanoTime();
+                Iterator<Row> distinct =
+                    new Pipeline.Dedupe(rows.iterator(), f == 1);
+                while (distinct.hasNext()) {
+                    distinct.next();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            reportRows(labels[f], 2L * table.size(), best);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            ArrayList<Row> rows = copies(table);
+            Table copy = new Table(new String[] {
+                    "SID", "Lastname", "Dept", "Year", "Grade" });
+            long start = System.nanoTime();
+            copy.addAll(rows);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows("add (Table.addAll)", 2L * table.size(), best);
+    }
+
+    /** Return new copies of the rows of TABLE, each followed by a second
+     *  copy. */
+    static ArrayList<Row> copies(Table table) {
+        ArrayList<Row> rows = new ArrayList<>();
+        for (Row row : table) {
+            for (int c = 0; c < 2; c += 1) {
+                String[] values = new String[row.size()];
+                for (int k = 0; k < values.length; k += 1) {
+                    values[k] = row.get(k);
+                }
+                rows.add(new Row(values));
+            }
+        }
+        return rows;
+    }
+
+    /** Report the time taken by a grouped select of the table in FILE,
+     *  when it is first run and when it is repeated and found in the
+     *  result cache. */
+    static void benchmarkCache(File file) {
+        String setup = "create table T (SID, Lastname, Dept, Year, Grade);\n"
+            + "copy T from '" + file.getPath() + "';\n";
+        String select = "select Dept, count(*) from T group by Dept;\n";
+        StringBuilder script = new StringBuilder(setup);
+        for (int i = 0; i <= REPEATS; i += 1) {
+            script.append(select);
+        }
+        PrintStream stdout = System.out;
+        long first, repeated;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            CommandInterpreter interpreter =
+                new CommandInterpreter(new Scanner(script.toString()), null);
+            interpreter.statement();
+            interpreter.statement();
+            long start = System.nanoTime();
+            interpreter.statement();
+            first = System.nanoTime() - start;
+            start = System.nanoTime();
+            while (interpreter.statement()) {
+                continue;
+            }
+            repeated = (System.nanoTime() - start) / REPEATS;
+        } finally {
+            System.setOut(stdout);
+        }
+        System.out.printf("%-32s %8.6f s%n", "select (first)", first / NANOS);
+        System.out.printf("%-32s %8.6f s%n", "select (cached)",
+                          repeated / NANOS);
+    }
+
+    /** Report the time taken to add a row to the table in FILE and bring
+     *  up to date a table holding the result of a join of that table,
+     *  when the table is a materialized view, and when it is created
+     *  again from the join. */
+    static void benchmarkView(File file) {
+        StringBuilder setup = new StringBuilder(
+            "create table T (SID, Lastname, Dept, Year, Grade);\n"
+            + "copy T from '" + file.getPath() + "';\n"
+            + "create table D (Dept, Building);\n"
+            + "insert into D values ");
+        for (int i = 0; i < DEPTS.length; i += 1) {
+            setup.append(i == 0 ? "" : ", ").append("('").append(DEPTS[i])
+                .append("', 'Hall").append(i).append("')");
+        }
+        setup.append(";\n");
+        String select = "select SID, Lastname, Building from T, D"
+            + " where Year >= '2015'";
+        StringBuilder incremental = new StringBuilder(setup);
+        incremental.append("create view V as ").append(select)
+            .append(" materialized;\n");
+        StringBuilder recreated = new StringBuilder(setup);
+        for (int i = 0; i < VIEW_INSERTS; i += 1) {
+            String insert = String.format(
+                "insert into T values 'new%d', 'Name', '%s', '2019', 'A';%n",
+                i, DEPTS[i % DEPTS.length]);
+            incremental.append(insert);
+            recreated.append(insert).append("create table V as ")
+                .append(select).append(";\n");
+        }
+        String[] labels = { "insert (materialized view)",
+                            "insert (create table as select)" };
+        String[] scripts = { incremental.toString(), recreated.toString() };
+        int[] setups = { SETUP_STATEMENTS + 2, SETUP_STATEMENTS + 1 };
+        PrintStream stdout = System.out;
+        for (int i = 0; i < scripts.length; i += 1) {
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            long time;
+            try {
+                CommandInterpreter interpreter =
+                    new CommandInterpreter(new Scanner(scripts[i]), null);
+                for (int k = 0; k < setups[i]; k += 1) {
+                    interpreter.statement();
+                }
+                long start = System.nanoTime();
+                while (interpreter.statement()) {
+                    continue;
+                }
+                time = System.nanoTime() - start;
+            } finally {
+                System.setOut(stdout);
+            }
+            System.out.printf("%-32s %8.6f s%n", labels[i],
+                              time / VIEW_INSERTS / NANOS);
+        }
+    }
+
+    /** Report the rates at which a select of TABLE produces its rows,
+     *  and produces them while explain analyze counts the rows, time and
+     *  allocations of each operator. */
+    static void benchmarkExplain(Table table) {
+        ArrayList<String> columns = new ArrayList<>();
+        columns.add("Lastname");
+        columns.add("Dept");
+        ArrayList<Condition> conditions = new ArrayList<>();
+        conditions.add(new Condition(new Column("Year", table), ">=",
+                                     "2010"));
+        Query query = new Query(new Table[] { table }, columns, conditions);
+        PrintStream plans = new PrintStream(new ByteArrayOutputStream());
+        String[] labels = { "select", "select (explain analyze)" };
+        for (int a = 0; a < labels.length; a += 1) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < TRIALS; i += 1) {
+                long start = System.nanoTime();
+                if (a == 0) {
+                    Iterator<Row> rows = query.iterator();
+                    while (rows.hasNext()) {
+                        rows.next();
+                    }
+                } else {
+                    query.explain(plans, true);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            reportRows(labels[a], table.size(), best);
+        }
+    }
+
+    /** Report the rates at which a script of STATEMENTS statements is
+     *  split into tokens by the regular expression that Tokenizer once
+     *  used, and by Tokenizer. */
+    static void benchmarkTokenizer() {
+        long best = Long.MAX_VALUE;
+        int tokens = 0;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            Scanner scanner = new Scanner(new Script(STATEMENTS));
+            for (tokens = 0; scanner.findWithinHorizon(TOKEN_PATN, 0) != null;
+                 tokens += 1) {
+                continue;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows("tokenize (regex), tokens", tokens, best);
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i += 1) {
+            long start = System.nanoTime();
+            Tokenizer tokenizer = new Tokenizer(new Script(STATEMENTS), null);
+            while (!tokenizer.next().equals("*EOF*")) {
+                tokenizer.flush();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        reportRows("tokenize (Tokenizer), tokens", tokens, best);
+    }
+
+    /** A Reader producing a script of a given number of statements. */
+    static class Script extends Reader {
+        /** A script of STATEMENTS statements. */
+        Script(int statements) {
+            _remaining = statements;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (_pos == _line.length()) {
+                if (_remaining == 0) {
+                    return -1;
+                }
+                _line = SCRIPT[_remaining % SCRIPT.length];
+                _pos = 0;
+                _remaining -= 1;
+            }
+            int n = Math.min(length, _line.length() - _pos);
+            _line.getChars(_pos, _pos + n, buffer, offset);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Number of statements yet to be produced. */
+        private int _remaining;
+        /** The statement being produced. */
+        private String _line = "";
+        /** Number of characters of _line already produced. */
+        private int _pos;
+    }
+
+    /** Read NAME.db line by line, splitting each line with String.split
+     *  into a new Row, and return the resulting Table. */
+    static Table readBySplitting(String name) throws IOException {
+        BufferedReader input =
+            new BufferedReader(new FileReader(name + ".db"));
+        Table table = new Table(input.readLine().split(","));
+        for (String line = input.readLine(); line != null;
+             line = input.readLine()) {
+            table.add(new Row(line.split(",")));
+        }
+        input.close();
+        return table;
+    }
+
+    /** Print the time NANOSECONDS taken by the benchmark LABEL, and its
+     *  rate in processing ROWS rows. */
+    static void reportRows(String label, long rows, long nanoseconds) {
+        double seconds = nanoseconds / NANOS;
+        System.out.printf("%-32s %8.3f s %10.2f Mrows/s%n", label, seconds,
+                          rows / MEGAROWS / seconds);
+    }
+
+    /** Print the time NANOSECONDS taken by the benchmark LABEL, and its
+     *  rate in processing BYTES bytes of data. */
+    static void report(String label, long bytes, long nanoseconds) {
+        double seconds = nanoseconds / NANOS;
+        System.out.printf("%-32s %8.3f s %10.1f MB/s%n", label, seconds,
+                          bytes / MEGABYTE / seconds);
+    }
+}
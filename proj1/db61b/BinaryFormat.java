@@ -0,0 +1,206 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static db61b.Utils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The binary .db file format.  A binary file consists of
+ *  <ul>
+ *  <li> the bytes of MAGIC, followed by the format VERSION;
+ *  <li> the number of columns and the title and type of each;
+ *  <li> for each column, a dictionary of its distinct values;
+ *  <li> the number of rows, followed by each row as a fixed-width
+ *       sequence of dictionary codes, one per column, each as few bytes
+ *       (big-endian) as hold the largest code in that column's
+ *       dictionary.
+ *  </ul>
+ *  Counts are 4-byte integers and strings are a variable-length
+ *  length (7 bits per byte, high bit set on all but the last byte)
+ *  followed by that many bytes of UTF-8.
+ *  @author Bo Liu
+ */
+class BinaryFormat {
+
+    /** Bytes that begin every binary table file.  No text table can
+     *  begin this way, since a text header contains no NUL. */
+    private static final byte[] MAGIC = { 'D', 'B', '6', '1', 'B', 0 };
+    /** Version of the format written.  Version 1 files, which have no
+     *  column types, can still be read. */
+    private static final int VERSION = 2;
+    /** Size of the I/O buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Number of bits in a byte. */
+    private static final int BYTE_BITS = 8;
+    /** Mask for one unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+    /** Number of length bits held by each byte of a string length, and
+     *  the flag marking all but the last such byte. */
+    private static final int LENGTH_BITS = 7, MORE = 0x80;
+
+    /** Return true iff CHANNEL contains a binary table.  Does not change
+     *  the position of CHANNEL. */
+    static boolean detect(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+        while (start.hasRemaining()
+               && channel.read(start, start.position()) > 0) {
+            continue;
+        }
+        return Arrays.equals(start.array(), MAGIC);
+    }
+
+    /** Return the table in CHANNEL, which contains the binary table
+     *  NAME.db, interning its values in VALUES, if it is not null. */
+    static Table read(String name, FileChannel channel,
+                      ValueDictionary values) throws IOException {
+        DataInputStream input =
+            new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), BUFFER_SIZE));
+        try {
+            input.skipBytes(MAGIC.length);
+            int version = input.readInt();
+            if (version < 1 || version > VERSION) {
+                throw error("unknown format version in %s.db", name);
+            }
+            String[] titles = new String[input.readInt()];
+            Type[] types = new Type[titles.length];
+            for (int k = 0; k < titles.length; k += 1) {
+                titles[k] = readString(input);
+                types[k] = version == 1 ? Type.STRING
+                    : Type.parse(readString(input));
+            }
+            Table table = new Table(titles, types);
+            String[][] dictionaries = new String[titles.length][];
+            int[] widths = new int[titles.length];
+            int width = 0;
+            for (int k = 0; k < titles.length; k += 1) {
+                dictionaries[k] = new String[input.readInt()];
+                for (int c = 0; c < dictionaries[k].length; c += 1) {
+                    dictionaries[k][c] = readString(input);
+                }
+                widths[k] = codeWidth(dictionaries[k].length);
+                width += widths[k];
+            }
+            byte[] codes = new byte[width];
+            ByteBuffer buffer = ByteBuffer.wrap(codes);
+            for (int n = input.readInt(); n > 0; n -= 1) {
+                input.readFully(codes);
+                buffer.clear();
+                String[] data = new String[titles.length];
+                for (int k = 0; k < data.length; k += 1) {
+                    data[k] = dictionaries[k][readCode(buffer, widths[k])];
+                }
+                table.add(new Row(data));
+            }
+            table.share(values);
+            return table;
+        } catch (EOFException | IndexOutOfBoundsException
+                 | NegativeArraySizeException e) {
+            throw error("corrupted binary file %s.db", name);
+        }
+    }
+
+    /** Write TABLE to OUTPUT in binary form. */
+    static void write(Table table, OutputStream output) throws IOException {
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(output,
+                                                          BUFFER_SIZE));
+        int columns = table.columns();
+        Dictionary[] dictionaries = new Dictionary[columns];
+        for (int k = 0; k < columns; k += 1) {
+            dictionaries[k] = new Dictionary();
+        }
+        for (Row row : table) {
+            for (int k = 0; k < columns; k += 1) {
+                dictionaries[k].code(row.get(k));
+            }
+        }
+
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columns);
+        for (int k = 0; k < columns; k += 1) {
+            writeString(out, table.getTitle(k));
+            writeString(out, table.getType(k).toString());
+        }
+        int[] widths = new int[columns];
+        for (int k = 0; k < columns; k += 1) {
+            Dictionary dict = dictionaries[k];
+            out.writeInt(dict.size());
+            for (int c = 0; c < dict.size(); c += 1) {
+                writeString(out, dict.value(c));
+            }
+            widths[k] = codeWidth(dict.size());
+        }
+        out.writeInt(table.size());
+        for (Row row : table) {
+            for (int k = 0; k < columns; k += 1) {
+                int code = dictionaries[k].code(row.get(k));
+                for (int w = widths[k] - 1; w >= 0; w -= 1) {
+                    out.writeByte(code >>> (w * BYTE_BITS));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /** Return the number of bytes in each code for a dictionary of SIZE
+     *  values. */
+    private static int codeWidth(int size) {
+        int width;
+        for (width = 1; width < Integer.BYTES
+                 && (size - 1) >>> (width * BYTE_BITS) != 0; width += 1) {
+            continue;
+        }
+        return width;
+    }
+
+    /** Read and return the next code, which is WIDTH bytes long, from
+     *  BUFFER. */
+    private static int readCode(ByteBuffer buffer, int width) {
+        int code = 0;
+        for (int w = width; w > 0; w -= 1) {
+            code = (code << BYTE_BITS) | (buffer.get() & BYTE_MASK);
+        }
+        return code;
+    }
+
+    /** Read a string from INPUT. */
+    static String readString(DataInputStream input)
+        throws IOException {
+        int length = 0;
+        for (int shift = 0; true; shift += LENGTH_BITS) {
+            int b = input.readUnsignedByte();
+            length |= (b & ~MORE) << shift;
+            if ((b & MORE) == 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /** Write S to OUT. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        int length = bytes.length;
+        while (length >= MORE) {
+            out.writeByte(length | MORE);
+            length >>>= LENGTH_BITS;
+        }
+        out.writeByte(length);
+        out.write(bytes);
+    }
+}
@@ -16,17 +16,45 @@ class Column {
         for (_table = 0; _table < tables.length; _table += 1) {
             _column = tables[_table].findColumn(name);
             if (_column != -1) {
+                _type = tables[_table].getType(_column);
                 return;
             }
         }
         throw error("unknown column: %s", name);
     }
 
+    /** Selects column named NAME from ROWS[TABLE] in getFrom, where
+     *  ROWS[TABLE] comes from T. */
+    Column(String name, int table, Table t) {
+        _name = name;
+        _table = table;
+        _column = t.findColumn(name);
+        if (_column == -1) {
+            throw error("unknown column: %s", name);
+        }
+        _type = t.getType(_column);
+    }
+
     /** Return my name. */
     String getName() {
         return _name;
     }
 
+    /** Return the type of my values. */
+    Type getType() {
+        return _type;
+    }
+
+    /** Return the index of the table, among those given to my constructor,
+     *  from which I select. */
+    int tableNumber() {
+        return _table;
+    }
+
+    /** Return the number of the column I select within my table. */
+    int columnNumber() {
+        return _column;
+    }
 
     /** Returns the value of this Column from ROWS[_table]. Assumes that
      *  ROWS[_table] is from the same table that was provided to the
@@ -45,4 +73,6 @@ class Column {
     private String _name;
     /** Index of the table and column from which to extract a value. */
     private int _table, _column;
+    /** Type of my values. */
+    private Type _type;
 }
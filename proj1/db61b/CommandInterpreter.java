@@ -1,9 +1,14 @@
 package db61b;
 
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
 
 import static db61b.Utils.*;
 import static db61b.Tokenizer.*;
@@ -17,11 +22,53 @@ class CommandInterpreter {
     CommandInterpreter(Scanner inp, PrintStream prompter) {
         _input = new Tokenizer(inp, prompter);
         _database = new Database();
+        _prepared = new HashMap<>();
+    }
+
+    /** A new CommandInterpreter executing commands read from INP, writing
+     *  prompts on PROMPTER, if it is non-null. */
+    CommandInterpreter(Reader inp, PrintStream prompter) {
+        _input = new Tokenizer(inp, prompter);
+        _database = new Database();
+        _prepared = new HashMap<>();
+    }
+
+    /** A new CommandInterpreter executing commands read from INP on
+     *  DATABASE, which it may share with others, and writing prompts and
+     *  results on OUTPUT. */
+    CommandInterpreter(Reader inp, PrintStream output, Database database) {
+        _input = new Tokenizer(inp, output);
+        _output = output;
+        _database = database;
+        _prepared = new HashMap<>();
+    }
+
+    /** Execute statements until a quit or exit statement or the end of
+     *  input, reporting errors on my output and skipping the rest of the
+     *  statements that cause them.  A statement that fails after its
+     *  final semicolon has been read, as when its rows are being
+     *  printed, has no rest to skip. */
+    void interpret() {
+        while (true) {
+            try {
+                if (!statement()) {
+                    break;
+                }
+            } catch (DBException e) {
+                _output.printf("Error: %s%n", e.getMessage());
+                List<String> tokens = _input.tokens();
+                if (tokens.isEmpty()
+                    || !tokens.get(tokens.size() - 1).equals(";")) {
+                    skipCommand();
+                }
+            }
+        }
     }
 
     /** Parse and execute one statement from the token stream.  Return true
      *  iff the command is something other than quit or exit. */
     boolean statement() {
+        _input.flush();
         switch (_input.peek()) {
         case "create":
             createStatement();
@@ -31,12 +78,17 @@ class CommandInterpreter {
             break;
         case "exit": case "quit":
             exitStatement();
+            _database.commit(true);
             return false;
         case "*EOF*":
+            _database.commit(true);
             return false;
         case "insert":
             insertStatement();
             break;
+        case "copy":
+            copyStatement();
+            break;
         case "print":
             printStatement();
             break;
@@ -46,15 +98,35 @@ class CommandInterpreter {
         case "store":
             storeStatement();
             break;
+        case "prepare":
+            prepareStatement();
+            break;
+        case "execute":
+            executeStatement();
+            break;
+        case "stats":
+            statsStatement();
+            break;
+        case "explain":
+            explainStatement();
+            break;
         default:
             throw error("unrecognizable command");
         }
+        _database.commit(false);
         return true;
     }
 
     /** Parse and execute a create statement from the token stream. */
     void createStatement() {
         _input.next("create");
+        if (_input.nextIs("index")) {
+            createIndexStatement();
+            return;
+        } else if (_input.nextIs("view")) {
+            createViewStatement();
+            return;
+        }
         _input.next("table");
         String name = name();
         Table table = tableDefinition();
@@ -62,6 +134,40 @@ class CommandInterpreter {
         _database.put(name, table);
     }
 
+    /** Parse and execute the remainder of a create view statement,
+     *  following the initial "create".  The view holds the result of a
+     *  select clause, which is kept up to date as rows are added to the
+     *  tables it reads. */
+    void createViewStatement() {
+        _input.next("view");
+        String name = name();
+        _input.next("as");
+        Query query = selectClause();
+        _input.next("materialized");
+        View view = new View(query);
+        _input.next(";");
+        _database.put(name, view.table());
+    }
+
+    /** Parse and execute the remainder of a create index statement,
+     *  following the initial "create". */
+    void createIndexStatement() {
+        _input.next("index");
+        _input.next("on");
+        Table table = tableName();
+        _input.next("(");
+        String column = columnName();
+        _input.next(")");
+        _input.next(";");
+        Lock lock = table.writeLock();
+        lock.lock();
+        try {
+            table.createIndex(column);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /** Parse and execute an exit or quit statement. Actually does nothing
      *  except check syntax, since statement() handles the actual exiting. */
     void exitStatement() {
@@ -71,31 +177,83 @@ class CommandInterpreter {
         _input.next(";");
     }
 
-    /** Parse and execute an insert statement from the token stream. */
+    /** Parse and execute an insert statement from the token stream.  The
+     *  statement gives either the values of one row, or a list of rows
+     *  whose values are enclosed in parentheses.  No row is inserted
+     *  unless all of them are valid. */
     void insertStatement() {
         _input.next("insert");
         _input.next("into");
         Table table = tableName();
+        checkWritable(table);
         _input.next("values");
+        ArrayList<Row> rows = new ArrayList<>();
+        if (_input.nextIs("(")) {
+            do {
+                _input.next("(");
+                rows.add(values(table));
+                _input.next(")");
+            } while (_input.nextIf(","));
+        } else {
+            rows.add(values(table));
+        }
+        _input.next(";");
+        List<Lock> locks = table.lockForAdding();
+        try {
+            table.addAll(rows);
+        } finally {
+            Table.unlock(locks);
+        }
+    }
 
+    /** Parse and execute a copy statement from the token stream. */
+    void copyStatement() {
+        _input.next("copy");
+        Table table = tableName();
+        _input.next("from");
+        String file = literal();
+        checkWritable(table);
+        _input.next(";");
+        int n;
+        List<Lock> locks = table.lockForAdding();
+        try {
+            n = table.copyFrom(file);
+        } finally {
+            Table.unlock(locks);
+        }
+        _output.printf("Copied %d rows from %s%n", n, file);
+    }
+
+    /** Throw a DBException if rows may not be added to TABLE, which is
+     *  so if it holds a view. */
+    private void checkWritable(Table table) {
+        if (table.view() != null) {
+            throw error("cannot insert into a view");
+        }
+    }
+
+    /** Parse a list of literals from the token stream, and return them as
+     *  a row of TABLE, checked against the columns of TABLE. */
+    Row values(Table table) {
         ArrayList<String> values = new ArrayList<>();
         values.add(literal());
         while (_input.nextIf(",")) {
             values.add(literal());
         }
-        _input.next(";");
-
-        table.add(new Row(values.toArray(new String[values.size()])));
+        Row row = new Row(values.toArray(new String[values.size()]));
+        table.check(row);
+        return row;
     }
 
     /** Parse and execute a load statement from the token stream. */
     void loadStatement() {
         _input.next("load");
         String name = name();
-        Table temp = Table.readTable(name);
+        Table temp = Table.readTable(name, _database.values());
+        _database.loaded(name, temp);
         _database.put(name, temp);
         _input.next(";");
-        System.out.printf("Loaded %s.db%n", name);
+        _output.printf("Loaded %s.db%n", name);
     }
 
     /** Parse and execute a store statement from the token stream. */
@@ -103,9 +261,24 @@ class CommandInterpreter {
         _input.next("store");
         String name = _input.peek();
         Table table = tableName();
-        table.writeTable(name);
+        boolean binary = _input.nextIf("as");
+        if (binary) {
+            _input.next("binary");
+        }
+        Lock lock = table.writeLock();
+        lock.lock();
+        try {
+            if (binary) {
+                table.writeBinaryTable(name);
+            } else {
+                table.writeTable(name);
+            }
+            _database.stored(name, table);
+        } finally {
+            lock.unlock();
+        }
         _input.next(";");
-        System.out.printf("Stored %s.db%n", name);
+        _output.printf("Stored %s.db%n", name);
     }
 
     /** Parse and execute a print statement from the token stream. */
@@ -114,65 +287,261 @@ class CommandInterpreter {
         String name = _input.peek();
         Table table = tableName();
         _input.next(";");
-        System.out.printf("Contents of %s:%n", name);
-        table.print();
+        _output.printf("Contents of %s:%n", name);
+        List<Lock> locks = Table.lock(Table.readLocks(table));
+        try {
+            table.print(_output);
+        } finally {
+            Table.unlock(locks);
+        }
     }
 
     /** Parse and execute a select statement from the token stream. */
     void selectStatement() {
-        Table table = selectClause();
+        int start = _input.tokens().size();
+        Query query = selectClause();
+        List<String> tokens = _input.tokens();
+        String text = String.join(" ", tokens.subList(start, tokens.size()));
+        _input.next(";");
+        _output.println("Search results:");
+        print(query, text);
+    }
+
+    /** Parse and execute a stats statement from the token stream. */
+    void statsStatement() {
+        _input.next("stats");
         _input.next(";");
-        System.out.println("Search results:");
-        table.print();
+        _output.printf("Result cache: %s%n", _database.cache().stats());
+    }
+
+    /** Parse and execute an explain statement from the token stream,
+     *  which prints the plan by which a select clause would be run.
+     *  With "analyze", the clause is run, without printing its rows, and
+     *  each step of the plan is followed by the number of rows it
+     *  produced and the time and memory it took. */
+    void explainStatement() {
+        _input.next("explain");
+        boolean analyze = _input.nextIf("analyze");
+        Query query = selectClause();
+        _input.next(";");
+        _output.println("Plan:");
+        List<Lock> locks = Table.lock(Table.readLocks(query.tables()));
+        try {
+            query.explain(_output, analyze);
+        } finally {
+            Table.unlock(locks);
+        }
+    }
+
+    /** Parse and execute a prepare statement from the token stream,
+     *  which names a select clause whose conditions may compare columns
+     *  with parameters, written ?.  The clause is parsed and its columns
+     *  resolved once, and kept until it is prepared again. */
+    void prepareStatement() {
+        _input.next("prepare");
+        String name = name();
+        _input.next("as");
+        Prepared prepared = preparedSelect();
+        _input.next(";");
+        _prepared.put(name, prepared);
+    }
+
+    /** Parse and execute an execute statement from the token stream,
+     *  which runs a prepared select clause with the values of its
+     *  parameters given by a parenthesized list of literals.  The clause
+     *  is parsed again first if a table has since been replaced. */
+    void executeStatement() {
+        _input.next("execute");
+        String name = name();
+        Prepared prepared = _prepared.get(name);
+        if (prepared == null) {
+            throw error("unknown prepared statement: %s", name);
+        }
+        ArrayList<String> values = new ArrayList<>();
+        if (_input.nextIf("(")) {
+            if (!_input.nextIs(")")) {
+                do {
+                    values.add(_database.values().lookup(literal()));
+                } while (_input.nextIf(","));
+            }
+            _input.next(")");
+        }
+        if (values.size() != prepared._parameters) {
+            throw error("wrong number of parameters: expected %d",
+                        prepared._parameters);
+        }
+        if (prepared._version != _database.version()) {
+            Tokenizer input = _input;
+            _input = new Tokenizer(new StringReader(String.join(
+                " ", prepared._tokens)), null);
+            try {
+                prepared = preparedSelect();
+            } finally {
+                _input = input;
+            }
+            _prepared.put(name, prepared);
+        }
+        Query query = prepared._query.bind(values);
+        _input.next(";");
+        _output.println("Search results:");
+        print(query, null);
+    }
+
+    /** Print the rows of QUERY on my output, holding shared locks on its
+     *  tables meanwhile.  If TEXT, the text of QUERY's select clause, is
+     *  non-null, the rows are taken from the database's result cache if
+     *  it has them, and otherwise added to it if they fit. */
+    private void print(Query query, String text) {
+        List<Lock> locks = Table.lock(Table.readLocks(query.tables()));
+        try {
+            ResultCache cache = _database.cache();
+            if (text == null || cache.limit() < 0) {
+                Pipeline.Operator<Row> rows = query.iterator();
+                try {
+                    Table.print(rows, _output);
+                } finally {
+                    rows.close();
+                }
+                return;
+            }
+            String key = ResultCache.key(text, query.tables());
+            List<Row> result = cache.get(key);
+            if (result != null) {
+                Table.print(result.iterator(), _output);
+                return;
+            }
+            result = new ArrayList<>();
+            Pipeline.Operator<Row> rows = query.iterator();
+            try {
+                while (rows.hasNext() && result.size() <= cache.limit()) {
+                    result.add(rows.next());
+                }
+                Table.print(result.iterator(), _output);
+                if (rows.hasNext()) {
+                    Table.print(rows, _output);
+                } else {
+                    cache.put(key, result);
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            Table.unlock(locks);
+        }
+    }
+
+    /** Parse a select clause from the token stream, in which conditions
+     *  may compare columns with parameters, and return it as a prepared
+     *  statement. */
+    private Prepared preparedSelect() {
+        int start = _input.tokens().size();
+        _parameters = 0;
+        try {
+            Query query = selectClause();
+            List<String> tokens = _input.tokens();
+            return new Prepared(query, _parameters,
+                                tokens.subList(start, tokens.size()),
+                                _database.version());
+        } finally {
+            _parameters = -1;
+        }
     }
 
     /** Parse and execute a table definition, returning the specified
-     *  table. */
+     *  table.  Each column in a parenthesized list of columns may be
+     *  followed by its type: int, double, or string (the default). */
     Table tableDefinition() {
         Table table;
         if (_input.nextIf("(")) {
             ArrayList<String> lst = new ArrayList<String>();
-            lst.add(columnName());
-            while (_input.nextIf(",")) {
+            ArrayList<Type> types = new ArrayList<Type>();
+            do {
                 lst.add(columnName());
-            }
+                types.add(columnType());
+            } while (_input.nextIf(","));
             _input.next(")");
-            table = new Table(lst);
+            table = new Table(lst, types);
         } else {
             _input.next("as");
-            table = selectClause();
+            Query query = selectClause();
+            List<Lock> locks = Table.lock(Table.readLocks(query.tables()));
+            try {
+                table = query.toTable();
+            } finally {
+                Table.unlock(locks);
+            }
         }
         return table;
     }
 
-    /** Parse and execute a select clause from the token stream, returning the
-     *  resulting table. */
-    Table selectClause() {
+    /** Parse a select clause from the token stream, returning the
+     *  query it denotes, which produces its rows as they are needed.
+     *  The clause may name any number of tables, which are naturally
+     *  joined.  Selected items may be aggregates, FUNCTION(column) or
+     *  count(*), optionally followed by "group by" and a list of
+     *  columns.  The clause may end with "order by" and a list of result
+     *  columns, each optionally followed by asc or desc, and then with
+     *  "limit" and a numeral. */
+    Query selectClause() {
         _input.next("select");
         ArrayList<String> lst = new ArrayList<String>();
-        lst.add(columnName());
-        while (_input.nextIf(",")) {
-            lst.add(columnName());
-        }
+        ArrayList<Aggregate> aggregates = new ArrayList<Aggregate>();
+        do {
+            String name = columnName();
+            Aggregate agg = null;
+            if (_input.nextIf("(")) {
+                Aggregate.Function function = Aggregate.Function.parse(name);
+                if (function == null) {
+                    throw error("unknown function: %s", name);
+                }
+                agg = new Aggregate(function,
+                                    _input.nextIf("*") ? null : columnName());
+                _input.next(")");
+            }
+            lst.add(name);
+            aggregates.add(agg);
+        } while (_input.nextIf(","));
         _input.next("from");
-        Table t = tableName();
-        Table t2 = null;
-        if (_input.nextIf(",")) {
-            t2 = tableName();
-        }
+        ArrayList<Table> tables = new ArrayList<Table>();
+        ArrayList<String> names = new ArrayList<String>();
+        do {
+            names.add(_input.peek());
+            tables.add(tableName());
+        } while (_input.nextIf(","));
+        Table[] t = tables.toArray(new Table[tables.size()]);
         ArrayList<Condition> con = new ArrayList<Condition>();
         if (_input.nextIf("where")) {
-            if (t2 == null) {
-                con = conditionClause(t);
-            } else {
-                con = conditionClause(t, t2);
-            }
+            con = conditionClause(t);
         }
-        if (t2 == null) {
-            return t.select(lst, con);
-        } else {
-            return t.select(t2, lst, con);
+        ArrayList<String> groupBy = new ArrayList<String>();
+        if (_input.nextIf("group")) {
+            _input.next("by");
+            do {
+                groupBy.add(columnName());
+            } while (_input.nextIf(","));
+        }
+        Query query = new Query(t, lst, aggregates, groupBy, con);
+        query.setNames(names);
+        if (_input.nextIf("order")) {
+            _input.next("by");
+            do {
+                String title = columnName();
+                boolean descending = _input.nextIf("desc");
+                if (!descending) {
+                    _input.nextIf("asc");
+                }
+                query.orderBy(title, descending);
+            } while (_input.nextIf(","));
+        }
+        if (_input.nextIf("limit")) {
+            String limit = _input.next(Tokenizer.NUMERAL);
+            try {
+                query.limit(Integer.parseInt(limit));
+            } catch (NumberFormatException e) {
+                throw error("limit too large: %s", limit);
+            }
         }
+        return query;
     }
 
     /** Parse and return a valid name (identifier) from the token stream. */
@@ -187,6 +556,15 @@ class CommandInterpreter {
         return name();
     }
 
+    /** Parse an optional column type from the token stream, returning
+     *  the Type it denotes, or STRING if there is none. */
+    Type columnType() {
+        if (_input.nextIs(",") || _input.nextIs(")")) {
+            return Type.STRING;
+        }
+        return Type.parse(name());
+    }
+
     /** Parse a valid table name from the token stream, and return the Table
      *  that it designates, which must be loaded. */
     Table tableName() {
@@ -225,7 +603,15 @@ class CommandInterpreter {
         Column col1 = new Column(temp, tables);
         String relation = _input.next(Tokenizer.RELATION);
         if (_input.nextIs(Tokenizer.LITERAL)) {
-            return new Condition(col1, relation, literal());
+            return new Condition(col1, relation,
+                                 _database.values().lookup(literal()));
+        } else if (_input.nextIf("?")) {
+            if (_parameters == -1) {
+                throw error("parameters are allowed only in prepared "
+                            + "statements");
+            }
+            _parameters += 1;
+            return new Condition(col1, relation, _parameters - 1);
         } else {
             Column col2 = new Column(columnName(), tables);
             return new Condition(col1, relation, col2);
@@ -239,8 +625,39 @@ class CommandInterpreter {
         }
     }
 
+    /** A select clause parsed by a prepare statement. */
+    private static class Prepared {
+        /** The select clause consisting of TOKENS, which denotes QUERY
+         *  and has PARAMETERS parameters, parsed when the version of the
+         *  database was VERSION. */
+        Prepared(Query query, int parameters, List<String> tokens,
+                 int version) {
+            _query = query;
+            _parameters = parameters;
+            _tokens = tokens;
+            _version = version;
+        }
+
+        /** The query, whose parameters are not yet bound. */
+        private Query _query;
+        /** Number of parameters of _query. */
+        private int _parameters;
+        /** The tokens of the clause, from which it is parsed again once
+         *  the database has a new version. */
+        private List<String> _tokens;
+        /** The version of the database when the clause was parsed. */
+        private int _version;
+    }
+
     /** The command input source. */
     private Tokenizer _input;
     /** Database containing all tables. */
     private Database _database;
+    /** Output for the results of statements. */
+    private PrintStream _output = System.out;
+    /** The statements prepared so far, by name. */
+    private HashMap<String, Prepared> _prepared;
+    /** Number of parameters parsed so far in the select clause of a
+     *  prepare statement, or -1 outside of one. */
+    private int _parameters = -1;
 }
@@ -1,7 +1,6 @@
 package db61b;
 
 import java.util.List;
-import static db61b.Utils.*;
 
 /** Represents a single 'where' condition in a 'select' command.
  *  @author Bo Liu */
@@ -11,19 +10,84 @@ class Condition {
      *  are column designators. and RELATION is one of the
      *  strings "<", ">", "<=", ">=", "=", or "!=". */
     Condition(Column col1, String relation, Column col2) {
+        this(col1, Relation.parse(relation), col2);
+    }
+
+    /** A Condition representing COL1 RELATION COL2, where COL2 is null
+     *  if the second operand is a literal or a parameter. */
+    private Condition(Column col1, Relation relation, Column col2) {
         _col1 = col1;
         _col2 = col2;
         _relation = relation;
+        _type = col2 == null ? col1.getType()
+            : Type.common(col1.getType(), col2.getType());
     }
 
     /** A Condition representing COL1 RELATION 'VAL2', where COL1 is
      *  a column designator, VAL2 is a literal value (without the
      *  quotes), and RELATION is one of the strings "<", ">", "<=",
-     *  ">=", "=", or "!=".
+     *  ">=", "=", or "!=".  VAL2 must be a valid value of the type
+     *  of COL1.
      */
     Condition(Column col1, String relation, String val2) {
         this(col1, relation, (Column) null);
-        _val2 = val2;
+        _val2 = _type.canonical(val2);
+    }
+
+    /** A Condition representing COL1 RELATION ?, where the second
+     *  operand is the value of the parameter numbered PARAMETER (from 0)
+     *  of a prepared statement, which must be bound before the condition
+     *  is tested. */
+    Condition(Column col1, String relation, int parameter) {
+        this(col1, relation, (Column) null);
+        _parameter = parameter;
+    }
+
+    /** Return a Condition like me, but with my second operand replaced by
+     *  the value in VALUES of its parameter, if it is one.  The value
+     *  must be a valid value of my type. */
+    Condition bind(List<String> values) {
+        if (_parameter == -1) {
+            return this;
+        }
+        Condition result = new Condition(_col1, _relation, (Column) null);
+        result._val2 = _type.canonical(values.get(_parameter));
+        return result;
+    }
+
+    /** Return my first operand. */
+    Column getColumn() {
+        return _col1;
+    }
+
+    /** Return my second operand if it is a column, and otherwise
+     *  null. */
+    Column getColumn2() {
+        return _col2;
+    }
+
+    /** Return my relation. */
+    Relation getRelation() {
+        return _relation;
+    }
+
+    /** Return the type in which my operands are compared. */
+    Type getType() {
+        return _type;
+    }
+
+    /** Return my second operand if it is a literal, and otherwise
+     *  null. */
+    String getLiteral() {
+        return _val2;
+    }
+
+    @Override
+    public String toString() {
+        String operand = _col2 != null ? _col2.getName()
+            : _val2 == null ? "?" : "'" + _val2 + "'";
+        return String.format("%s %s %s", _col1.getName(), _relation,
+                             operand);
     }
 
     /** Assuming that ROWS are rows from the respective tables from which
@@ -35,23 +99,7 @@ class Condition {
         if (temp0 == null) {
             temp0 = _col2.getFrom(rows);
         }
-        int comp = temp.compareTo(temp0);
-        switch(_relation) {
-        case "=":
-            return comp == 0;
-        case ">":
-            return comp > 0;
-        case "<":
-            return comp < 0;
-        case "!=":
-            return comp != 0;
-        case ">=":
-            return comp >= 0;
-        case "<=":
-            return comp <= 0;
-        default:
-            throw error("No such relation.");
-        }
+        return _relation.holds(_type.compare(temp, temp0));
     }
 
     /** Return true iff ROWS satisfies all CONDITIONS. */
@@ -69,6 +117,11 @@ class Condition {
     private Column _col1, _col2;
     /** Second operand, if literal (otherwise null). */
     private String _val2;
-    /** One of the strings "<", ">", "<=", ">=", "=", or "!=". */
-    private String _relation;
+    /** Number of the parameter that is my second operand, or -1 if it is
+     *  not a parameter. */
+    private int _parameter = -1;
+    /** My relation. */
+    private Relation _relation;
+    /** The type in which my operands are compared. */
+    private Type _type;
 }
@@ -1,14 +1,21 @@
 package db61b;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 
-/** A collection of Tables, indexed by name.
+/** A collection of Tables, indexed by name, which may be shared by the
+ *  sessions of a Server.
  *  @author Bo Liu*/
 class Database {
     /** An empty database. */
     public Database() {
-        _map = new HashMap<String, Table>();
+        _map = new ConcurrentHashMap<String, Table>();
+        _cache = new ResultCache(ResultCache.ROWS);
+        _values = new ValueDictionary();
+        if (WriteAheadLog.ENABLED) {
+            _log = new WriteAheadLog();
+        }
     }
 
     /** Return the Table whose name is NAME stored in this database, or null
@@ -19,14 +26,96 @@ class Database {
     }
 
     /** Set or replace the table named NAME in THIS to TABLE.  TABLE and
-     *  NAME must not be null, and NAME must be a valid name for a table. */
-    public void put(String name, Table table) {
+     *  NAME must not be null, and NAME must be a valid name for a table.
+     *  TABLE then shares its values with my other tables.  A view that
+     *  TABLE replaces, and that no other name designates, is no longer
+     *  maintained. */
+    public synchronized void put(String name, Table table) {
         if (name == null || table == null) {
             throw new IllegalArgumentException("null argument");
         }
-        _map.put(name, table);
+        Lock lock = table.writeLock();
+        lock.lock();
+        try {
+            table.share(_values);
+        } finally {
+            lock.unlock();
+        }
+        Table old = _map.put(name, table);
+        if (old != null) {
+            _version += 1;
+            if (old.view() != null && !_map.containsValue(old)) {
+                old.view().detach();
+            }
+        }
+    }
+
+    /** Return the number of times a table of mine has been replaced by
+     *  put, which changes whenever the Table that a name designates
+     *  changes. */
+    int version() {
+        return _version;
+    }
+
+    /** Return the values shared by my tables. */
+    ValueDictionary values() {
+        return _values;
+    }
+
+    /** Return the cache of the results of select statements on my
+     *  tables. */
+    ResultCache cache() {
+        return _cache;
+    }
+
+    /** Record that TABLE has just been read from NAME.db.  If logging is
+     *  enabled, adds to TABLE the rows logged for NAME.db since it was
+     *  stored, and logs the rows subsequently added to TABLE. */
+    void loaded(String name, Table table) {
+        if (_log != null) {
+            _log.commit(true);
+            WriteAheadLog.replay(name, table);
+            table.setLog(_log.open(name));
+        }
+    }
+
+    /** Record that TABLE has just been written to NAME.db.  If logging is
+     *  enabled, discards the rows logged for NAME.db, and logs the rows
+     *  subsequently added to TABLE. */
+    void stored(String name, Table table) {
+        if (_log != null) {
+            _log.commit(true);
+            WriteAheadLog.Log log = _log.open(name);
+            log.clear();
+            table.setLog(log);
+        }
+    }
+
+    /** Make the rows added to tables durable, if logging is enabled and
+     *  either FORCE or a group commit is due. */
+    void commit(boolean force) {
+        if (_log != null) {
+            _log.commit(force);
+        }
+    }
+
+    /** Make the rows added to my tables durable and close their logs, if
+     *  logging is enabled, once no more rows will be added. */
+    void close() {
+        if (_log != null) {
+            _log.close();
+        }
     }
 
     /** The database. */
-    private HashMap<String, Table> _map;
+    private ConcurrentHashMap<String, Table> _map;
+    /** Number of tables replaced by put. */
+    private volatile int _version;
+    /** The values shared by my tables. */
+    private ValueDictionary _values;
+    /** Caches the results of select statements. */
+    private ResultCache _cache;
+    /** The write-ahead log of my tables, or null if logging is
+     *  disabled. */
+    private WriteAheadLog _log;
 }
@@ -0,0 +1,107 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A dictionary of distinct String values, each of which is assigned
+ *  a small integer code in order of first appearance.  Tables keep one
+ *  per column so that equal values in different rows share a single
+ *  String; rows still hold their values as Strings, not codes, and the
+ *  codes are used only by the binary .db format.  A dictionary may take
+ *  its values from a ValueDictionary, so that they are also shared with
+ *  other tables.
+ *  @author Bo Liu
+ */
+class Dictionary {
+
+    /** Initial number of hash slots.  Must be a power of 2. */
+    private static final int INITIAL_SLOTS = 16;
+
+    /** Return the code of VALUE, adding VALUE to THIS if it is not
+     *  already present. */
+    int code(String value) {
+        int mask = _slots.length - 1;
+        int i = spread(value.hashCode()) & mask;
+        while (_slots[i] != 0) {
+            String v = _values[_slots[i] - 1];
+            if (v == value || v.equals(value)) {
+                return _slots[i] - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        if (_shared != null) {
+            value = _shared.intern(value);
+        }
+        if (_size == _values.length) {
+            _values = Arrays.copyOf(_values, 2 * _size);
+        }
+        _values[_size] = value;
+        _size += 1;
+        _slots[i] = _size;
+        if (2 * _size > _slots.length) {
+            rehash();
+        }
+        return _size - 1;
+    }
+
+    /** Return the value whose code is CODE.  Requires 0 <= CODE <
+     *  size(). */
+    String value(int code) {
+        return _values[code];
+    }
+
+    /** Return the value in THIS equal to VALUE, adding VALUE if there
+     *  is none. */
+    String intern(String value) {
+        return value(code(value));
+    }
+
+    /** Take my values, including those already present, from SHARED,
+     *  unless it is null. */
+    void share(ValueDictionary shared) {
+        _shared = shared;
+        if (shared != null) {
+            for (int code = 0; code < _size; code += 1) {
+                _values[code] = shared.intern(_values[code]);
+            }
+        }
+    }
+
+    /** Return the ValueDictionary from which I take my values, or null
+     *  if there is none. */
+    ValueDictionary shared() {
+        return _shared;
+    }
+
+    /** Return the number of distinct values in THIS. */
+    int size() {
+        return _size;
+    }
+
+    /** Double the number of hash slots. */
+    private void rehash() {
+        _slots = new int[2 * _slots.length];
+        int mask = _slots.length - 1;
+        for (int code = 0; code < _size; code += 1) {
+            int i = spread(_values[code].hashCode()) & mask;
+            while (_slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            _slots[i] = code + 1;
+        }
+    }
+
+    /** Return H with its high bits mixed into its low bits. */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /** Hash table of codes: each slot holds 1 + the code of a value, or 0
+     *  if empty. */
+    private int[] _slots = new int[INITIAL_SLOTS];
+    /** The source of my values, or null. */
+    private ValueDictionary _shared;
+    /** The values, indexed by code. */
+    private String[] _values = new String[INITIAL_SLOTS / 2];
+    /** Number of values. */
+    private int _size;
+}
@@ -0,0 +1,239 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static db61b.Utils.*;
+
+/** Sorts streams of tuples that may not fit in memory.  At most a fixed
+ *  number of tuples is held in memory at once; each time that many have
+ *  been read, they are sorted and written to a temporary file as a run,
+ *  and the runs are then merged as the sorted tuples are read.  The
+ *  tuples returned from runs are copies of the originals.  A run's file
+ *  is removed when the run has been read, or when the sorted tuples are
+ *  closed.  The files are kept in one temporary directory, which is
+ *  removed on exit if empty.
+ *  @author Bo Liu
+ */
+class ExternalSort {
+
+    /** Default number of tuples held in memory by a sort.  Set with the
+     *  property db61b.sortBudget. */
+    static final int BUDGET = Integer.getInteger("db61b.sortBudget", 1 << 20);
+    /** Size of the buffers used to write and read runs. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A sort into the order ORDER that holds at most BUDGET tuples in
+     *  memory. */
+    ExternalSort(Comparator<Row[]> order, int budget) {
+        _order = order;
+        _budget = Math.max(1, budget);
+    }
+
+    /** Return an iterator over the tuples of INPUT in my order, which
+     *  must be closed if it is not read to the end. */
+    Pipeline.Operator<Row[]> sort(Iterator<Row[]> input) {
+        ArrayList<Row[]> buffer = new ArrayList<>();
+        ArrayList<Run> runs = new ArrayList<>();
+        try {
+            while (input.hasNext()) {
+                buffer.add(input.next());
+                if (buffer.size() == _budget) {
+                    runs.add(spill(buffer));
+                    buffer.clear();
+                }
+            }
+            if (runs.isEmpty()) {
+                buffer.sort(_order);
+                Iterator<Row[]> sorted = buffer.iterator();
+                return new Pipeline.Operator<Row[]>() {
+                    @Override
+                    Row[] advance() {
+                        return sorted.hasNext() ? sorted.next() : null;
+                    }
+                };
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(spill(buffer));
+            }
+            return new Merge(runs);
+        } catch (IOException e) {
+            for (Run run : runs) {
+                run.close();
+            }
+            throw error("could not write temporary file for sort");
+        }
+    }
+
+    /** Sort TUPLES and write them to a new run, which is returned. */
+    private Run spill(List<Row[]> tuples) throws IOException {
+        tuples.sort(_order);
+        File file = File.createTempFile("db61b", ".run", directory());
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            for (Row[] tuple : tuples) {
+                out.writeInt(tuple.length);
+                for (Row row : tuple) {
+                    if (row == null) {
+                        out.writeInt(-1);
+                        continue;
+                    }
+                    out.writeInt(row.size());
+                    for (int k = 0; k < row.size(); k += 1) {
+                        BinaryFormat.writeString(out, row.get(k));
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return new Run(file, tuples.size());
+    }
+
+    /** Return the directory that holds the files of runs, creating it
+     *  if need be. */
+    static synchronized File directory() throws IOException {
+        if (_directory == null) {
+            _directory = Files.createTempDirectory("db61b").toFile();
+            _directory.deleteOnExit();
+        }
+        return _directory;
+    }
+
+    /** A sorted run of tuples in a temporary file. */
+    private static class Run {
+        /** The run of SIZE tuples in FILE. */
+        Run(File file, int size) {
+            _file = file;
+            _size = size;
+        }
+
+        /** Return the next tuple in the run, or null if there are no
+         *  more, in which case the run's file is removed. */
+        Row[] next() throws IOException {
+            if (_size == 0) {
+                close();
+                return null;
+            }
+            if (_input == null) {
+                _input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(_file), BUFFER_SIZE));
+            }
+            _size -= 1;
+            Row[] tuple = new Row[_input.readInt()];
+            for (int i = 0; i < tuple.length; i += 1) {
+                int n = _input.readInt();
+                if (n != -1) {
+                    String[] data = new String[n];
+                    for (int k = 0; k < n; k += 1) {
+                        data[k] = BinaryFormat.readString(_input);
+                    }
+                    tuple[i] = new Row(data);
+                }
+            }
+            return tuple;
+        }
+
+        /** Release the run's file. */
+        void close() {
+            try {
+                if (_input != null) {
+                    _input.close();
+                    _input = null;
+                }
+            } catch (IOException e) {
+                /* Ignore: the file is no longer needed. */
+            }
+            _file.delete();
+        }
+
+        /** The file holding the run. */
+        private File _file;
+        /** Number of tuples not yet read. */
+        private int _size;
+        /** Reads the run, or null if it has not been opened. */
+        private DataInputStream _input;
+    }
+
+    /** Merges a set of sorted runs, removing their files when closed. */
+    private class Merge extends Pipeline.Operator<Row[]> {
+        /** Merges the tuples of RUNS. */
+        Merge(List<Run> runs) throws IOException {
+            _heads = new PriorityQueue<>(runs.size(),
+                (a, b) -> _order.compare(a._head, b._head));
+            for (Run run : runs) {
+                Head head = new Head(run);
+                if (head._head != null) {
+                    _heads.add(head);
+                }
+            }
+        }
+
+        @Override
+        Row[] advance() {
+            Head head = _heads.poll();
+            if (head == null) {
+                return null;
+            }
+            Row[] result = head._head;
+            try {
+                head._head = head._run.next();
+            } catch (IOException e) {
+                throw error("could not read temporary file for sort");
+            }
+            if (head._head != null) {
+                _heads.add(head);
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            for (Head head : _heads) {
+                head._run.close();
+            }
+            _heads.clear();
+            super.close();
+        }
+
+        /** The runs not yet exhausted, ordered by their next tuples. */
+        private PriorityQueue<Head> _heads;
+    }
+
+    /** A run together with its next tuple. */
+    private static class Head {
+        /** The next tuple of RUN, which is read. */
+        Head(Run run) throws IOException {
+            _run = run;
+            _head = run.next();
+        }
+
+        /** The run. */
+        private Run _run;
+        /** The next tuple from _run, or null at its end. */
+        private Row[] _head;
+    }
+
+    /** The directory holding the files of runs, or null before the
+     *  first is written. */
+    private static File _directory;
+
+    /** The order in which I sort. */
+    private Comparator<Row[]> _order;
+    /** Maximum number of tuples I hold in memory. */
+    private int _budget;
+}
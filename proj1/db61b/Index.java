@@ -0,0 +1,139 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/** A sorted secondary index on one column of a table, mapping each value
+ *  of the column to the rows that contain it.
+ *  @author Bo Liu
+ */
+class Index {
+    /** An empty index on column number COLUMN, whose values have type
+     *  TYPE. */
+    Index(int column, Type type) {
+        _column = column;
+        _type = type;
+        _map = new TreeMap<>(type);
+    }
+
+    /** Return the number of the column I index. */
+    int column() {
+        return _column;
+    }
+
+    /** Record ROW, which must not already be present. */
+    void add(Row row) {
+        String key = row.get(_column);
+        ArrayList<Row> rows = _map.get(key);
+        if (rows == null) {
+            rows = new ArrayList<>(1);
+            _map.put(key, rows);
+        }
+        rows.add(row);
+    }
+
+    /** Return my rows in increasing order of their values in my
+     *  column. */
+    Iterable<Row> rows() {
+        return () -> new Pipeline.Operator<Row>() {
+            @Override
+            Row advance() {
+                while (!_rows.hasNext()) {
+                    if (!_buckets.hasNext()) {
+                        return null;
+                    }
+                    _rows = _buckets.next().iterator();
+                }
+                return _rows.next();
+            }
+
+            /** The lists of rows with each value, in order. */
+            private Iterator<ArrayList<Row>> _buckets =
+                _map.values().iterator();
+            /** The rows yet to be returned from the current list. */
+            private Iterator<Row> _rows = Collections.emptyIterator();
+        };
+    }
+
+    /** Return the rows that may satisfy all of CONDITIONS when they are
+     *  the TABLEth of the rows passed to Condition.test, as determined by
+     *  those CONDITIONS that compare my column with a literal, or null if
+     *  none of them does.  Rows in the result must still be tested
+     *  against CONDITIONS, and it must not be modified. */
+    List<Row> lookup(List<Condition> conditions, int table) {
+        String lo, hi;
+        boolean loInclusive, hiInclusive, used;
+        lo = hi = null;
+        loInclusive = hiInclusive = true;
+        used = false;
+        for (Condition cond : conditions) {
+            String val = cond.getLiteral();
+            Relation rel = cond.getRelation();
+            if (val == null || rel == Relation.NE
+                || cond.getColumn().tableNumber() != table
+                || cond.getColumn().columnNumber() != _column) {
+                continue;
+            }
+            if (rel.isLowerBound()) {
+                boolean strict = rel.isStrict();
+                int c = lo == null ? 1 : _type.compare(val, lo);
+                if (c > 0 || (c == 0 && strict)) {
+                    lo = val;
+                    loInclusive = !strict;
+                }
+            }
+            if (rel.isUpperBound()) {
+                boolean strict = rel.isStrict();
+                int c = hi == null ? -1 : _type.compare(val, hi);
+                if (c < 0 || (c == 0 && strict)) {
+                    hi = val;
+                    hiInclusive = !strict;
+                }
+            }
+            used = true;
+        }
+        if (!used) {
+            return null;
+        }
+        return range(lo, loInclusive, hi, hiInclusive);
+    }
+
+    /** Return the rows whose values in my column lie between LO and HI.
+     *  LO is included iff LOINCLUSIVE, and HI iff HIINCLUSIVE.  A null
+     *  bound is unlimited.  The result must not be modified. */
+    List<Row> range(String lo, boolean loInclusive,
+                    String hi, boolean hiInclusive) {
+        ArrayList<Row> result = new ArrayList<>();
+        if (lo != null && hi != null) {
+            int c = _type.compare(lo, hi);
+            if (c > 0 || (c == 0 && !(loInclusive && hiInclusive))) {
+                return result;
+            } else if (c == 0) {
+                ArrayList<Row> rows = _map.get(lo);
+                return rows == null ? result : rows;
+            }
+        }
+        NavigableMap<String, ArrayList<Row>> sub = _map;
+        if (lo != null) {
+            sub = sub.tailMap(lo, loInclusive);
+        }
+        if (hi != null) {
+            sub = sub.headMap(hi, hiInclusive);
+        }
+        for (ArrayList<Row> rows : sub.values()) {
+            result.addAll(rows);
+        }
+        return result;
+    }
+
+    /** The column I index. */
+    private int _column;
+    /** The type of the values in my column. */
+    private Type _type;
+    /** Maps each value in my column to the rows containing it. */
+    private TreeMap<String, ArrayList<Row>> _map;
+}
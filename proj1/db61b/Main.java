@@ -1,6 +1,7 @@
 package db61b;
 
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStreamReader;
 
 /** The main program for db61b.
  *  @author P. N. Hilfinger
@@ -12,25 +13,40 @@ public class Main {
 
     /** Starting with an empty database, read and execute commands from
      *  System.in until receiving a 'quit' ('exit') command or until
-     *  reaching the end of input. */
-    public static void main(String[] unused) {
+     *  reaching the end of input.  If ARGS is "--server" followed by an
+     *  optional port number, instead serve clients that connect to that
+     *  port (by default, Server.DEFAULT_PORT) on the loopback interface,
+     *  which share one database. */
+    public static void main(String[] args) {
         System.out.printf("DB61B System.  Version %s.%n", VERSION);
 
-        Scanner input = new Scanner(System.in);
-        CommandInterpreter interpreter =
-            new CommandInterpreter(input, System.out);
-
-        while (true) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = Server.DEFAULT_PORT;
             try {
-                if (!interpreter.statement()) {
-                    break;
+                if (args.length > 1) {
+                    port = Integer.parseInt(args[1]);
                 }
-            } catch (DBException e) {
-                System.out.printf("Error: %s%n", e.getMessage());
-                interpreter.skipCommand();
+                Server server = new Server(port);
+                System.out.printf("Serving on port %d%n", server.port());
+                server.serve();
+            } catch (NumberFormatException e) {
+                System.out.printf("Error: bad port: %s%n", args[1]);
+            } catch (IOException e) {
+                System.out.printf("Error: could not listen on port %d%n",
+                                  port);
             }
+            return;
+        }
+
+        Database database = new Database();
+        CommandInterpreter interpreter =
+            new CommandInterpreter(new InputStreamReader(System.in),
+                                   System.out, database);
+        try {
+            interpreter.interpret();
+        } finally {
+            database.close();
         }
     }
 
 }
-
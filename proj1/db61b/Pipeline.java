@@ -0,0 +1,956 @@
+package db61b;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static db61b.Utils.*;
+
+/** The operators from which select queries are built.  Each operator is
+ *  an iterator that pulls its input from the operator below it, so that
+ *  rows flow one at a time from the scan of a table, through joins,
+ *  filters and projections, to whatever consumes the result, and no
+ *  intermediate result is materialized.
+ *
+ *  Until projection, the operators pass along tuples: arrays of Rows with
+ *  one slot for each table in the query, in the order in which the tables
+ *  were given to the Columns of the query.
+ *  @author Bo Liu
+ */
+class Pipeline {
+
+    /** Source of the counts of bytes allocated by threads. */
+    private static final ThreadMXBean THREADS =
+        ManagementFactory.getThreadMXBean();
+    /** Indentation of each level of a plan printed by explain. */
+    private static final String INDENT = "  ";
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+    /** Bytes per kilobyte. */
+    private static final double BYTES_PER_KB = 1 << 10;
+
+    /** An iterator that computes each of its items on demand.  An
+     *  operator may be described, for explain, by a label and the
+     *  operators from which it reads; once analyzed, it also counts the
+     *  items it produces, and the time taken and memory allocated in
+     *  producing them, including those taken by its inputs. */
+    abstract static class Operator<T> implements Iterator<T>, AutoCloseable {
+
+        /** Return my next item, or null if there are no more. */
+        abstract T advance();
+
+        @Override
+        public boolean hasNext() {
+            if (_next == null && !_done) {
+                if (_analyzed) {
+                    long bytes = allocated();
+                    long start = System.nanoTime();
+                    _next = advance();
+                    _nanos += System.nanoTime() - start;
+                    _bytes += allocated() - bytes;
+                    _rows += _next == null ? 0 : 1;
+                } else {
+                    _next = advance();
+                }
+                _done = _next == null;
+            }
+            return _next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = _next;
+            _next = null;
+            return result;
+        }
+
+        /** Describe me as LABEL, reading from INPUTS, and return me. */
+        Operator<T> describe(String label, Operator<?>... inputs) {
+            _label = label;
+            _inputs = Arrays.asList(inputs);
+            return this;
+        }
+
+        /** Describe me as LABEL, reading from PARTS, which are parts of
+         *  one input that have the same plans, and return me. */
+        Operator<T> describe(String label,
+                             List<? extends Operator<?>> parts) {
+            _label = label;
+            _inputs = parts;
+            _parts = true;
+            return this;
+        }
+
+        /** Release what I and the operators from which I read hold
+         *  besides memory, such as the files of a sort, after which I
+         *  produce nothing more.  An operator that holds such things
+         *  overrides this, and calls it as well.  Operators read to the
+         *  end may be closed, but need not be. */
+        @Override
+        public void close() {
+            _done = true;
+            _next = null;
+            for (Operator<?> input : _inputs) {
+                input.close();
+            }
+        }
+
+        /** Count the items produced by me and by the operators from which
+         *  I read, and the time and memory they take. */
+        void analyze() {
+            _analyzed = true;
+            for (Operator<?> input : _inputs) {
+                input.analyze();
+            }
+        }
+
+        /** The next item, if already computed. */
+        private T _next;
+        /** True once advance has returned null. */
+        private boolean _done;
+        /** My description, or null. */
+        private String _label;
+        /** The operators from which I read. */
+        private List<? extends Operator<?>> _inputs =
+            Collections.emptyList();
+        /** True iff _inputs are the parts of one input. */
+        private boolean _parts;
+        /** True iff I count my items, time and allocations. */
+        private boolean _analyzed;
+        /** Number of items I have produced, if _analyzed. */
+        private long _rows;
+        /** Time spent producing my items, in nanoseconds, if
+         *  _analyzed. */
+        private long _nanos;
+        /** Bytes allocated in producing my items, if _analyzed. */
+        private long _bytes;
+    }
+
+    /** Print to OUTPUT the plan of OPERATORS, indented by INDENT, with
+     *  their counts if ANALYZED.  OPERATORS are the parallel parts of one
+     *  step of a plan, which have the same plans, and which are printed
+     *  once, with their counts summed. */
+    static void explain(List<? extends Operator<?>> operators,
+                        String indent, boolean analyzed,
+                        PrintStream output) {
+        Operator<?> first = operators.get(0);
+        StringBuilder line = new StringBuilder(indent);
+        line.append(first._label == null ? first.getClass().getSimpleName()
+                    : first._label);
+        if (operators.size() > 1) {
+            line.append(String.format(" (%d parts)", operators.size()));
+        }
+        if (analyzed) {
+            long rows, nanos, bytes;
+            rows = nanos = bytes = 0;
+            for (Operator<?> op : operators) {
+                rows += op._rows;
+                nanos += op._nanos;
+                bytes += op._bytes;
+            }
+            line.append(String.format("  [rows=%d time=%.3f ms "
+                                      + "alloc=%.1f KB]", rows,
+                                      nanos / NANOS_PER_MILLI,
+                                      bytes / BYTES_PER_KB));
+        }
+        output.println(line);
+        if (first._parts) {
+            ArrayList<Operator<?>> parts = new ArrayList<>();
+            for (Operator<?> op : operators) {
+                parts.addAll(op._inputs);
+            }
+            explain(parts, indent + INDENT, analyzed, output);
+            return;
+        }
+        for (int i = 0; i < first._inputs.size(); i += 1) {
+            ArrayList<Operator<?>> inputs = new ArrayList<>();
+            for (Operator<?> op : operators) {
+                inputs.add(op._inputs.get(i));
+            }
+            explain(inputs, indent + INDENT, analyzed, output);
+        }
+    }
+
+    /** Return the number of bytes allocated so far by the current thread,
+     *  or 0 if the virtual machine does not count them. */
+    static long allocated() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    /** Produces a tuple of SLOTS slots for each row of a table, with the
+     *  row in one slot and the others empty. */
+    static class Scan extends Operator<Row[]> {
+        /** Produces a tuple with slots SLOTS for each of ROWS, which come
+         *  from the table in slot SLOT. */
+        Scan(int slots, int slot, Iterable<Row> rows) {
+            _slots = slots;
+            _slot = slot;
+            _rows = rows.iterator();
+        }
+
+        @Override
+        Row[] advance() {
+            if (!_rows.hasNext()) {
+                return null;
+            }
+            Row[] tuple = new Row[_slots];
+            tuple[_slot] = _rows.next();
+            return tuple;
+        }
+
+        /** Number of slots in each tuple. */
+        private int _slots;
+        /** The slot filled by my rows. */
+        private int _slot;
+        /** The rows yet to be scanned. */
+        private Iterator<Row> _rows;
+    }
+
+    /** Passes along those tuples from its input that satisfy a list of
+     *  Conditions, compiled into a Predicate. */
+    static class Filter extends Operator<Row[]> {
+        /** Passes along the tuples from INPUT that satisfy CONDITIONS. */
+        Filter(Iterator<Row[]> input, List<Condition> conditions) {
+            _input = input;
+            _predicate = new Predicate(conditions);
+        }
+
+        @Override
+        Row[] advance() {
+            while (_input.hasNext()) {
+                Row[] tuple = _input.next();
+                if (_predicate.test(tuple)) {
+                    return tuple;
+                }
+            }
+            return null;
+        }
+
+        /** Source of tuples. */
+        private Iterator<Row[]> _input;
+        /** The conditions that tuples must satisfy. */
+        private Predicate _predicate;
+    }
+
+    /** Extends each input tuple with each row of a table that agrees with
+     *  it on a list of key columns, using a hash table built on the key
+     *  values of the table's rows.  With no key columns, forms the cross
+     *  product of the input with the table. */
+    static class HashJoin extends Operator<Row[]> {
+        /** Extends each tuple from INPUT, filling slot SLOT with each of
+         *  ROWS whose values in columns BUILDKEY equal the values of
+         *  PROBEKEY in the tuple.  BUILDKEY and PROBEKEY have the same
+         *  length; the columns in PROBEKEY select from filled slots. */
+        HashJoin(Iterator<Row[]> input, int slot, Iterable<Row> rows,
+                 int[] buildKey, List<Column> probeKey) {
+            _input = input;
+            _slot = slot;
+            _rows = rows;
+            _buildKey = buildKey;
+            _probeKey = probeKey;
+            _matches = Collections.<Row>emptyList().iterator();
+        }
+
+        @Override
+        Row[] advance() {
+            if (_buckets == null) {
+                build();
+            }
+            while (!_matches.hasNext()) {
+                if (!_input.hasNext()) {
+                    return null;
+                }
+                _tuple = _input.next();
+                String[] key = new String[_probeKey.size()];
+                for (int i = 0; i < key.length; i += 1) {
+                    key[i] = _probeKey.get(i).getFrom(_tuple);
+                }
+                List<Row> bucket = _buckets.get(Arrays.asList(key));
+                if (bucket != null) {
+                    _matches = bucket.iterator();
+                }
+            }
+            Row[] tuple = _tuple.clone();
+            tuple[_slot] = _matches.next();
+            return tuple;
+        }
+
+        /** Group the rows of my table by their key values. */
+        private void build() {
+            _buckets = new HashMap<>();
+            for (Row row : _rows) {
+                String[] key = new String[_buildKey.length];
+                for (int i = 0; i < key.length; i += 1) {
+                    key[i] = row.get(_buildKey[i]);
+                }
+                List<String> k = Arrays.asList(key);
+                ArrayList<Row> bucket = _buckets.get(k);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(1);
+                    _buckets.put(k, bucket);
+                }
+                bucket.add(row);
+            }
+        }
+
+        /** Source of tuples to be extended. */
+        private Iterator<Row[]> _input;
+        /** The slot I fill. */
+        private int _slot;
+        /** Columns giving the key of an input tuple. */
+        private List<Column> _probeKey;
+        /** The rows of my table. */
+        private Iterable<Row> _rows;
+        /** The columns of my table giving the key of a row. */
+        private int[] _buildKey;
+        /** The rows of my table, grouped by key, or null before they are
+         *  grouped. */
+        private HashMap<List<String>, ArrayList<Row>> _buckets;
+        /** The input tuple currently being extended. */
+        private Row[] _tuple;
+        /** The rows yet to be joined with _tuple. */
+        private Iterator<Row> _matches;
+    }
+
+    /** Extends each input tuple with each row of a table that agrees with
+     *  it on a list of key columns, by walking the input and the rows of
+     *  the table together in increasing order of their keys.  Unlike a
+     *  HashJoin, holds only the rows of the table that share one key,
+     *  and passes along the input in its original order. */
+    static class MergeJoin extends Operator<Row[]> {
+        /** Extends each tuple from INPUT, filling slot SLOT with the row in
+         *  slot SLOT of each tuple from ROWS whose values of ROWKEY equal
+         *  the values of INPUTKEY in the input tuple.  The keys have the
+         *  same length, and their Ith columns are compared as values of
+         *  TYPES[I].  INPUT and ROWS must be in increasing order of their
+         *  keys. */
+        MergeJoin(Iterator<Row[]> input, List<Column> inputKey,
+                  Iterator<Row[]> rows, List<Column> rowKey,
+                  Type[] types, int slot) {
+            _input = input;
+            _inputKey = inputKey;
+            _rows = rows;
+            _rowKey = rowKey;
+            _types = types;
+            _slot = slot;
+        }
+
+        @Override
+        Row[] advance() {
+            if (!_started) {
+                _peek = _rows.hasNext() ? _rows.next() : null;
+                _started = true;
+            }
+            while (_match == _group.size()) {
+                if (!_input.hasNext()) {
+                    return null;
+                }
+                _tuple = _input.next();
+                _match = 0;
+                if (_groupKey != null
+                    && compare(_tuple, _inputKey, _groupKey, _rowKey,
+                               _types) == 0) {
+                    continue;
+                }
+                _group.clear();
+                _groupKey = null;
+                while (_peek != null
+                       && compare(_peek, _rowKey, _tuple, _inputKey,
+                                  _types) < 0) {
+                    _peek = _rows.hasNext() ? _rows.next() : null;
+                }
+                while (_peek != null
+                       && compare(_peek, _rowKey, _tuple, _inputKey,
+                                  _types) == 0) {
+                    _groupKey = _peek;
+                    _group.add(_peek[_slot]);
+                    _peek = _rows.hasNext() ? _rows.next() : null;
+                }
+            }
+            Row[] tuple = _tuple.clone();
+            tuple[_slot] = _group.get(_match);
+            _match += 1;
+            return tuple;
+        }
+
+        /** Source of tuples to be extended. */
+        private Iterator<Row[]> _input;
+        /** Columns giving the key of an input tuple. */
+        private List<Column> _inputKey;
+        /** Source of the tuples holding my table's rows. */
+        private Iterator<Row[]> _rows;
+        /** Columns giving the key of a tuple from _rows. */
+        private List<Column> _rowKey;
+        /** The types in which key columns are compared. */
+        private Type[] _types;
+        /** The slot I fill. */
+        private int _slot;
+        /** The next tuple from _rows, or null if there are no more. */
+        private Row[] _peek;
+        /** True once _peek has first been read. */
+        private boolean _started;
+        /** The rows whose key equals that of _tuple. */
+        private ArrayList<Row> _group = new ArrayList<>();
+        /** A tuple from _rows with the key of _group, or null if _group
+         *  is empty. */
+        private Row[] _groupKey;
+        /** The input tuple currently being extended. */
+        private Row[] _tuple;
+        /** Index in _group of the next row to be joined with _tuple. */
+        private int _match;
+    }
+
+    /** Produces the tuples of its input in a given order, sorting them
+     *  all with an ExternalSort when its first tuple is needed. */
+    static class TupleSort extends Operator<Row[]> {
+        /** Produces the tuples of INPUT in the order of SORT. */
+        TupleSort(Iterator<Row[]> input, ExternalSort sort) {
+            _input = input;
+            _sort = sort;
+        }
+
+        @Override
+        Row[] advance() {
+            if (_sorted == null) {
+                _sorted = _sort.sort(_input);
+            }
+            return _sorted.hasNext() ? _sorted.next() : null;
+        }
+
+        @Override
+        public void close() {
+            if (_sorted != null) {
+                _sorted.close();
+            }
+            super.close();
+        }
+
+        /** Source of tuples. */
+        private Iterator<Row[]> _input;
+        /** The sort that orders them. */
+        private ExternalSort _sort;
+        /** The sorted tuples, or null before sorting. */
+        private Operator<Row[]> _sorted;
+    }
+
+    /** Orders tuples by the values of a list of key columns. */
+    static class KeyOrder implements Comparator<Row[]> {
+        /** Orders tuples by the values of KEY, whose Ith column is compared
+         *  as values of TYPES[I]. */
+        KeyOrder(List<Column> key, Type[] types) {
+            _key = key;
+            _types = types;
+        }
+
+        @Override
+        public int compare(Row[] tuple1, Row[] tuple2) {
+            return Pipeline.compare(tuple1, _key, tuple2, _key, _types);
+        }
+
+        /** The key columns. */
+        private List<Column> _key;
+        /** The types of the key columns. */
+        private Type[] _types;
+    }
+
+    /** Compare the values of KEY1 in TUPLE1 with those of KEY2 in TUPLE2
+     *  lexicographically, comparing the Ith columns of the keys as values
+     *  of TYPES[I]. */
+    static int compare(Row[] tuple1, List<Column> key1,
+                       Row[] tuple2, List<Column> key2, Type[] types) {
+        for (int i = 0; i < types.length; i += 1) {
+            int c = types[i].compare(key1.get(i).getFrom(tuple1),
+                                     key2.get(i).getFrom(tuple2));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Converts each input tuple into a Row containing selected columns of
+     *  the tuple. */
+    static class Project extends Operator<Row> {
+        /** Converts each tuple from INPUT into a Row of the values of
+         *  COLUMNS. */
+        Project(Iterator<Row[]> input, List<Column> columns) {
+            _input = input;
+            _columns = columns;
+        }
+
+        @Override
+        Row advance() {
+            if (!_input.hasNext()) {
+                return null;
+            }
+            return new Row(_columns, _input.next());
+        }
+
+        /** Source of tuples. */
+        private Iterator<Row[]> _input;
+        /** The columns to be selected. */
+        private List<Column> _columns;
+    }
+
+    /** Groups its input tuples by the values of a list of key columns in a
+     *  hash table, accumulating a list of Aggregates over each group, and
+     *  produces a Row for each group once the input is exhausted.  With
+     *  no key columns, there is always exactly one group, which is empty
+     *  if there are no tuples.  The input may be divided into several
+     *  parts, which are grouped in parallel into separate tables whose
+     *  partial aggregates are then merged. */
+    static class HashAggregate extends Operator<Row> {
+        /** Groups the tuples from all of INPUTS by the values of KEY,
+         *  computing each of AGGREGATES over each group, where the Ith
+         *  aggregate summarizes COLUMNS[I], or whole tuples if that is
+         *  null.  The Ith value of each output row is element LAYOUT[I]
+         *  of the list of the group's key values followed by its
+         *  aggregate values. */
+        HashAggregate(List<? extends Iterator<Row[]>> inputs,
+                      List<Column> key,
+                      List<Aggregate> aggregates, List<Column> columns,
+                      int[] layout) {
+            _inputs = inputs;
+            _key = key;
+            _aggregates = aggregates;
+            _columns = columns;
+            _layout = layout;
+        }
+
+        @Override
+        Row advance() {
+            if (_groups == null) {
+                HashMap<List<String>, Aggregate.Accumulator[]> groups =
+                    groups();
+                if (_key.isEmpty() && groups.isEmpty()) {
+                    groups.put(Collections.emptyList(), accumulators());
+                }
+                _groups = groups.entrySet().iterator();
+            }
+            if (!_groups.hasNext()) {
+                return null;
+            }
+            Map.Entry<List<String>, Aggregate.Accumulator[]> group =
+                _groups.next();
+            int keys = _key.size();
+            String[] data = new String[_layout.length];
+            for (int i = 0; i < data.length; i += 1) {
+                int k = _layout[i];
+                data[i] = k < keys ? group.getKey().get(k)
+                    : group.getValue()[k - keys].value();
+            }
+            return new Row(data);
+        }
+
+        /** Return the groups of all my inputs, grouping several inputs in
+         *  parallel. */
+        private HashMap<List<String>, Aggregate.Accumulator[]> groups() {
+            if (_inputs.size() == 1) {
+                return group(_inputs.get(0));
+            }
+            ArrayList<Callable<HashMap<List<String>,
+                                       Aggregate.Accumulator[]>>> tasks =
+                new ArrayList<>();
+            for (Iterator<Row[]> input : _inputs) {
+                tasks.add(() -> group(input));
+            }
+            HashMap<List<String>, Aggregate.Accumulator[]> result = null;
+            for (HashMap<List<String>, Aggregate.Accumulator[]> part
+                     : runAll(tasks)) {
+                if (result == null) {
+                    result = part;
+                    continue;
+                }
+                for (Map.Entry<List<String>, Aggregate.Accumulator[]> e
+                         : part.entrySet()) {
+                    Aggregate.Accumulator[] accums =
+                        result.putIfAbsent(e.getKey(), e.getValue());
+                    if (accums != null) {
+                        for (int i = 0; i < accums.length; i += 1) {
+                            accums[i].merge(e.getValue()[i]);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Return the groups of the tuples of INPUT, mapping the key
+         *  values of each group to its aggregates. */
+        private HashMap<List<String>, Aggregate.Accumulator[]>
+            group(Iterator<Row[]> input) {
+            HashMap<List<String>, Aggregate.Accumulator[]> groups =
+                new HashMap<>();
+            while (input.hasNext()) {
+                Row[] tuple = input.next();
+                String[] key = new String[_key.size()];
+                for (int i = 0; i < key.length; i += 1) {
+                    key[i] = _key.get(i).getFrom(tuple);
+                }
+                List<String> k = Arrays.asList(key);
+                Aggregate.Accumulator[] accums = groups.get(k);
+                if (accums == null) {
+                    accums = accumulators();
+                    groups.put(k, accums);
+                }
+                for (Aggregate.Accumulator accum : accums) {
+                    accum.add(tuple);
+                }
+            }
+            return groups;
+        }
+
+        /** Return new, empty accumulators for my aggregates. */
+        private Aggregate.Accumulator[] accumulators() {
+            Aggregate.Accumulator[] accums =
+                new Aggregate.Accumulator[_aggregates.size()];
+            for (int i = 0; i < accums.length; i += 1) {
+                Column col = _columns.get(i);
+                accums[i] = new Aggregate.Accumulator(
+                    _aggregates.get(i).function(), col,
+                    col == null ? Type.STRING : col.getType());
+            }
+            return accums;
+        }
+
+        /** Sources of tuples. */
+        private List<? extends Iterator<Row[]>> _inputs;
+        /** Columns giving the key of a tuple. */
+        private List<Column> _key;
+        /** The aggregates computed for each group. */
+        private List<Aggregate> _aggregates;
+        /** The columns summarized by _aggregates. */
+        private List<Column> _columns;
+        /** Positions of the values of output rows among the key and
+         *  aggregate values of a group. */
+        private int[] _layout;
+        /** The groups yet to be produced, or null before grouping. */
+        private Iterator<Map.Entry<List<String>,
+                                   Aggregate.Accumulator[]>> _groups;
+    }
+
+    /** Converts each tuple from several inputs into a Row containing
+     *  selected columns of the tuple, processing the inputs in parallel.
+     *  Rows are produced in rounds, in each of which every input converts
+     *  up to BATCH tuples, so that the first rows are produced before all
+     *  the tuples are read and at most one round is held at a time.  As
+     *  with Project, the rows may contain duplicates. */
+    static class ParallelProject extends Operator<Row> {
+        /** Number of tuples each input converts in a round. */
+        static final int BATCH = 1 << 12;
+
+        /** Converts each tuple from all of INPUTS into a Row of the values
+         *  of COLUMNS. */
+        ParallelProject(List<? extends Iterator<Row[]>> inputs,
+                        List<Column> columns) {
+            _inputs = new ArrayList<>(inputs);
+            _columns = columns;
+        }
+
+        @Override
+        Row advance() {
+            while (!_rows.hasNext()) {
+                if (_inputs.isEmpty()) {
+                    return null;
+                }
+                ArrayList<Callable<List<Row>>> tasks = new ArrayList<>();
+                for (Iterator<Row[]> input : _inputs) {
+                    tasks.add(() -> {
+                        ArrayList<Row> rows = new ArrayList<>();
+                        while (rows.size() < BATCH && input.hasNext()) {
+                            rows.add(new Row(_columns, input.next()));
+                        }
+                        return rows;
+                    });
+                }
+                List<List<Row>> results = runAll(tasks);
+                ArrayList<Row> round = new ArrayList<>();
+                for (int i = results.size() - 1; i >= 0; i -= 1) {
+                    if (results.get(i).size() < BATCH) {
+                        _inputs.remove(i);
+                    }
+                }
+                for (List<Row> rows : results) {
+                    round.addAll(rows);
+                }
+                _rows = round.iterator();
+            }
+            return _rows.next();
+        }
+
+        /** Sources of tuples that may have more. */
+        private List<Iterator<Row[]>> _inputs;
+        /** The columns to be selected. */
+        private List<Column> _columns;
+        /** The rows of the current round yet to be produced. */
+        private Iterator<Row> _rows = Collections.emptyIterator();
+    }
+
+    /** Run TASKS in parallel on the common fork-join pool, returning
+     *  their results in order.  A DBException thrown by a task is thrown
+     *  again. */
+    static <T> List<T> runAll(List<? extends Callable<T>> tasks) {
+        ArrayList<T> results = new ArrayList<>();
+        try {
+            for (Future<T> result
+                     : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            throw error("interrupted while processing rows");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DBException) {
+                throw (DBException) e.getCause();
+            }
+            throw error("problem while processing rows: %s", e.getCause());
+        }
+        return results;
+    }
+
+    /** Passes along the first of each set of equal rows from its
+     *  input. */
+    static class Dedupe extends Operator<Row> {
+        /** True iff rows are deduplicated by default by their
+         *  fingerprints, rather than by keeping the rows seen.  Set with
+         *  the property db61b.fingerprintDedupe. */
+        static final boolean FINGERPRINTS =
+            Boolean.getBoolean("db61b.fingerprintDedupe");
+
+        /** Passes along the distinct rows of INPUT. */
+        Dedupe(Iterator<Row> input) {
+            this(input, FINGERPRINTS);
+        }
+
+        /** Passes along the distinct rows of INPUT, recognizing those
+         *  already seen by their fingerprints if FINGERPRINTS, and
+         *  otherwise by keeping them in a HashSet. */
+        Dedupe(Iterator<Row> input, boolean fingerprints) {
+            _input = input;
+            if (fingerprints) {
+                _fingerprints = new FingerprintSet();
+            } else {
+                _seen = new HashSet<>();
+            }
+        }
+
+        @Override
+        Row advance() {
+            while (_input.hasNext()) {
+                Row row = _input.next();
+                if (_seen == null ? _fingerprints.add(row) : _seen.add(row)) {
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        /** Source of rows. */
+        private Iterator<Row> _input;
+        /** The rows passed so far, or null if _fingerprints is used. */
+        private HashSet<Row> _seen;
+        /** The fingerprints of the rows passed so far, or null if _seen
+         *  is used. */
+        private FingerprintSet _fingerprints;
+    }
+
+    /** Passes along at most a fixed number of rows from its input. */
+    static class Limit extends Operator<Row> {
+        /** Passes along the first LIMIT rows of INPUT. */
+        Limit(Iterator<Row> input, int limit) {
+            _input = input;
+            _remaining = limit;
+        }
+
+        @Override
+        Row advance() {
+            if (_remaining == 0 || !_input.hasNext()) {
+                return null;
+            }
+            _remaining -= 1;
+            return _input.next();
+        }
+
+        /** Source of rows. */
+        private Iterator<Row> _input;
+        /** Number of rows yet to be passed along. */
+        private int _remaining;
+    }
+
+    /** Produces the first few distinct rows of its input in a given
+     *  order, keeping only those rows in a bounded heap, so that K rows
+     *  are chosen from N in O(N log K) time and O(K) space. */
+    static class TopK extends Operator<Row> {
+        /** Produces the first LIMIT distinct rows of INPUT in order ORDER,
+         *  which must not consider distinct rows equal. */
+        TopK(Iterator<Row> input, Comparator<Row> order, int limit) {
+            _input = input;
+            _order = order;
+            _limit = limit;
+        }
+
+        @Override
+        Row advance() {
+            if (_result == null) {
+                _result = select().iterator();
+            }
+            return _result.hasNext() ? _result.next() : null;
+        }
+
+        /** Return the rows I produce, in order.  The heap holds the first
+         *  rows seen so far, with the last of them on top.  A row equal
+         *  to one that has been removed from the heap cannot enter it
+         *  again, so duplicates need only be checked among the rows in
+         *  the heap. */
+        private List<Row> select() {
+            ArrayList<Row> result = new ArrayList<>();
+            if (_limit == 0) {
+                return result;
+            }
+            PriorityQueue<Row> heap =
+                new PriorityQueue<>(_limit, _order.reversed());
+            HashSet<Row> members = new HashSet<>();
+            while (_input.hasNext()) {
+                Row row = _input.next();
+                if (heap.size() < _limit) {
+                    if (members.add(row)) {
+                        heap.add(row);
+                    }
+                } else if (_order.compare(row, heap.peek()) < 0
+                           && members.add(row)) {
+                    members.remove(heap.poll());
+                    heap.add(row);
+                }
+            }
+            result.addAll(heap);
+            result.sort(_order);
+            return result;
+        }
+
+        /** Source of rows. */
+        private Iterator<Row> _input;
+        /** The order of my rows. */
+        private Comparator<Row> _order;
+        /** Maximum number of rows to produce. */
+        private int _limit;
+        /** The rows yet to be produced, or null before they are
+         *  chosen. */
+        private Iterator<Row> _result;
+    }
+
+    /** Produces the distinct rows of its input in a given order, sorting
+     *  them with an ExternalSort. */
+    static class Sort extends Operator<Row> {
+        /** Produces the distinct rows of INPUT in order ORDER, which must
+         *  not consider distinct rows equal, holding at most BUDGET rows
+         *  in memory. */
+        Sort(Iterator<Row> input, Comparator<Row> order, int budget) {
+            _input = input;
+            _order = order;
+            _budget = budget;
+        }
+
+        @Override
+        Row advance() {
+            if (_sorted == null) {
+                Iterator<Row[]> tuples = new Operator<Row[]>() {
+                    @Override
+                    Row[] advance() {
+                        return _input.hasNext() ? new Row[] { _input.next() }
+                            : null;
+                    }
+                };
+                _sorted = new ExternalSort((a, b) -> _order.compare(a[0],
+                                                                    b[0]),
+                                           _budget).sort(tuples);
+            }
+            while (_sorted.hasNext()) {
+                Row row = _sorted.next()[0];
+                if (_last == null || _order.compare(row, _last) != 0) {
+                    _last = row;
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            if (_sorted != null) {
+                _sorted.close();
+            }
+            super.close();
+        }
+
+        /** Source of rows. */
+        private Iterator<Row> _input;
+        /** The order of my rows. */
+        private Comparator<Row> _order;
+        /** Maximum number of rows held in memory. */
+        private int _budget;
+        /** The sorted rows, wrapped in tuples, or null before sorting. */
+        private Operator<Row[]> _sorted;
+        /** The last row produced, or null. */
+        private Row _last;
+    }
+
+    /** Orders rows by the values of a list of their columns, each in
+     *  ascending or descending order, and then by all of their values as
+     *  strings, so that only equal rows are considered equal. */
+    static class RowOrder implements Comparator<Row> {
+        /** Orders rows by the values of their columns KEYS, where the
+         *  values of column KEYS[I] are compared as values of TYPES[I],
+         *  in descending order if DESCENDING[I]. */
+        RowOrder(int[] keys, Type[] types, boolean[] descending) {
+            _keys = keys;
+            _types = types;
+            _descending = descending;
+        }
+
+        @Override
+        public int compare(Row row1, Row row2) {
+            for (int i = 0; i < _keys.length; i += 1) {
+                int c = _types[i].compare(row1.get(_keys[i]),
+                                          row2.get(_keys[i]));
+                if (c != 0) {
+                    return _descending[i] ? -c : c;
+                }
+            }
+            for (int k = 0; k < row1.size(); k += 1) {
+                int c = row1.get(k).compareTo(row2.get(k));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        /** The columns by which rows are ordered. */
+        private int[] _keys;
+        /** The types of the values of _keys. */
+        private Type[] _types;
+        /** Whether each of _keys is in descending order. */
+        private boolean[] _descending;
+    }
+}
@@ -0,0 +1,154 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A conjunction of Conditions, compiled once per query for testing on
+ *  many tuples.  The table and column numbers of each operand are
+ *  resolved in advance, equality tests on text avoid compareTo, numeric
+ *  literals are converted to numbers once, numeric values are taken
+ *  from the numbers that rows keep rather than parsed, and conditions
+ *  whose outcome
+ *  does not depend on the rows are folded away.
+ *  @author Bo Liu
+ */
+class Predicate {
+
+    /** The conjunction of CONDITIONS.  Equality tests against literals
+     *  are placed first, since they are cheap and usually selective. */
+    Predicate(List<Condition> conditions) {
+        ArrayList<Condition> conds = new ArrayList<>();
+        for (Condition cond : conditions) {
+            if (cond.getLiteral() != null
+                && cond.getRelation() == Relation.EQ) {
+                conds.add(cond);
+            }
+        }
+        for (Condition cond : conditions) {
+            if (cond.getLiteral() == null
+                || cond.getRelation() != Relation.EQ) {
+                conds.add(cond);
+            }
+        }
+
+        int n = conds.size();
+        _table1 = new int[n];
+        _column1 = new int[n];
+        _table2 = new int[n];
+        _column2 = new int[n];
+        _literal = new String[n];
+        _integer = new long[n];
+        _number = new double[n];
+        _relation = new Relation[n];
+        _type = new Type[n];
+        int k = 0;
+        for (Condition cond : conds) {
+            Column col1 = cond.getColumn(), col2 = cond.getColumn2();
+            Relation rel = cond.getRelation();
+            if (col2 != null && sameColumn(col1, col2)) {
+                if (rel.holds(0)) {
+                    continue;
+                }
+                _never = true;
+            }
+            if (cond.getLiteral() != null && rel == Relation.EQ) {
+                for (int i = 0; i < k; i += 1) {
+                    if (_literal[i] != null && _relation[i] == Relation.EQ
+                        && _table1[i] == col1.tableNumber()
+                        && _column1[i] == col1.columnNumber()
+                        && _type[i].compare(_literal[i],
+                                            cond.getLiteral()) != 0) {
+                        _never = true;
+                    }
+                }
+            }
+            _table1[k] = col1.tableNumber();
+            _column1[k] = col1.columnNumber();
+            if (col2 != null) {
+                _table2[k] = col2.tableNumber();
+                _column2[k] = col2.columnNumber();
+            }
+            _literal[k] = cond.getLiteral();
+            _relation[k] = rel;
+            _type[k] = cond.getType();
+            if (_literal[k] != null && _type[k] == Type.INT) {
+                _integer[k] = Long.parseLong(_literal[k]);
+            } else if (_literal[k] != null && _type[k] == Type.DOUBLE) {
+                _number[k] = Double.parseDouble(_literal[k]);
+            }
+            k += 1;
+        }
+        _size = k;
+    }
+
+    /** Return true iff the tuple ROWS satisfies all my conditions. */
+    boolean test(Row[] rows) {
+        if (_never) {
+            return false;
+        }
+        for (int i = 0; i < _size; i += 1) {
+            Row row1 = rows[_table1[i]];
+            String val2 = _literal[i];
+            Type type = _type[i];
+            Relation rel = _relation[i];
+            int comp;
+            if (type == Type.INT) {
+                comp = Long.compare(row1.integer(_column1[i]),
+                                    val2 != null ? _integer[i]
+                                    : rows[_table2[i]].integer(_column2[i]));
+            } else if (type == Type.DOUBLE) {
+                comp = Double.compare(row1.real(_column1[i]),
+                                      val2 != null ? _number[i]
+                                      : rows[_table2[i]].real(_column2[i]));
+            } else {
+                String val1 = row1.get(_column1[i]);
+                if (val2 == null) {
+                    val2 = rows[_table2[i]].get(_column2[i]);
+                }
+                if (rel == Relation.EQ || rel == Relation.NE) {
+                    boolean equal = val1 == val2 || val1.equals(val2);
+                    if (equal != (rel == Relation.EQ)) {
+                        return false;
+                    }
+                    continue;
+                }
+                comp = type.compare(val1, val2);
+            }
+            if (!rel.holds(comp)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff COL1 and COL2 select the same column of the same
+     *  table. */
+    private static boolean sameColumn(Column col1, Column col2) {
+        return col1.tableNumber() == col2.tableNumber()
+            && col1.columnNumber() == col2.columnNumber();
+    }
+
+    /** Number of conditions remaining after folding. */
+    private int _size;
+    /** True iff some condition can never hold. */
+    private boolean _never;
+    /** Table and column numbers of the first operand of each
+     *  condition. */
+    private int[] _table1, _column1;
+    /** Table and column numbers of the second operand of each condition,
+     *  if it is a column. */
+    private int[] _table2, _column2;
+    /** The second operand of each condition, if it is a literal, and
+     *  otherwise null. */
+    private String[] _literal;
+    /** The value of the second operand of each condition, if it is a
+     *  literal compared as an INT. */
+    private long[] _integer;
+    /** The value of the second operand of each condition, if it is a
+     *  literal compared as a DOUBLE. */
+    private double[] _number;
+    /** The relation of each condition. */
+    private Relation[] _relation;
+    /** The type in which the operands of each condition are compared. */
+    private Type[] _type;
+}
@@ -0,0 +1,754 @@
+package db61b;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+
+import static db61b.Utils.*;
+
+/** A select query over one or more tables, which computes its result
+ *  lazily through a Pipeline of operators.  The result contains the
+ *  selected columns of each combination of rows, one from each table,
+ *  that agree on all columns with identical names and satisfy the
+ *  query's conditions.
+ *  @author Bo Liu
+ */
+class Query implements Iterable<Row> {
+
+    /** The factor by which a range condition on a column is assumed to
+     *  reduce the number of rows. */
+    private static final double RANGE_SELECTIVITY = 3;
+    /** Queries on a single table with at least this many candidate rows
+     *  are processed in parallel.  Set with the property
+     *  db61b.parallelRows. */
+    static final int PARALLEL_ROWS =
+        Integer.getInteger("db61b.parallelRows", 1 << 18);
+    /** Number of parts into which a parallel query is divided for each
+     *  worker thread, to even out the work. */
+    private static final int PARTS_PER_THREAD = 4;
+
+    /** A query selecting the columns named COLUMNNAMES from TABLES,
+     *  subject to CONDITIONS, whose Columns must have been created
+     *  with TABLES. */
+    Query(Table[] tables, List<String> columnNames,
+          List<Condition> conditions) {
+        this(tables, columnNames, null, null, conditions);
+    }
+
+    /** A query selecting items from TABLES, subject to CONDITIONS, whose
+     *  Columns must have been created with TABLES.  The Ith item is the
+     *  column named COLUMNNAMES[I] if AGGREGATES[I] is null, and is
+     *  otherwise that aggregate, computed over each group of result
+     *  tuples with the same values of the columns named GROUPBY.  When
+     *  there are aggregates or GROUPBY columns, each column item must be
+     *  one of the GROUPBY columns, and the query has one row per group;
+     *  a query with aggregates but no GROUPBY columns has a single group,
+     *  which is empty if no tuple satisfies CONDITIONS.  The titles of
+     *  the items must be distinct.  Either of AGGREGATES and GROUPBY may
+     *  be null if there are none. */
+    Query(Table[] tables, List<String> columnNames,
+          List<Aggregate> aggregates, List<String> groupBy,
+          List<Condition> conditions) {
+        _tables = tables;
+        _conditions = conditions;
+        _titles = new ArrayList<>();
+        _columns = new ArrayList<>();
+        _aggregates = new ArrayList<>();
+        _aggregateColumns = new ArrayList<>();
+        _groupBy = new ArrayList<>();
+        if (groupBy != null) {
+            for (String name : groupBy) {
+                _groupBy.add(new Column(name, tables));
+            }
+        }
+        for (int i = 0; i < columnNames.size(); i += 1) {
+            Aggregate agg = aggregates == null ? null : aggregates.get(i);
+            if (agg == null) {
+                _titles.add(columnNames.get(i));
+                _columns.add(new Column(columnNames.get(i), tables));
+            } else {
+                _titles.add(agg.title());
+                _columns.add(null);
+                _aggregates.add(agg);
+                _aggregateColumns.add(agg.columnName() == null ? null
+                    : new Column(agg.columnName(), tables));
+            }
+        }
+        for (int i = 1; i < _titles.size(); i += 1) {
+            if (_titles.subList(0, i).contains(_titles.get(i))) {
+                throw error("duplicate column name: %s", _titles.get(i));
+            }
+        }
+        _grouped = !_aggregates.isEmpty() || !_groupBy.isEmpty();
+        if (_grouped) {
+            _layout = new int[_titles.size()];
+            for (int i = 0, a = 0; i < _layout.length; i += 1) {
+                if (_columns.get(i) == null) {
+                    _layout[i] = _groupBy.size() + a;
+                    a += 1;
+                } else {
+                    _layout[i] = groupNumber(_titles.get(i));
+                }
+            }
+        }
+    }
+
+    /** A query like QUERY, but subject to CONDITIONS. */
+    private Query(Query query, List<Condition> conditions) {
+        _tables = query._tables;
+        _conditions = conditions;
+        _titles = query._titles;
+        _columns = query._columns;
+        _aggregates = query._aggregates;
+        _aggregateColumns = query._aggregateColumns;
+        _groupBy = query._groupBy;
+        _grouped = query._grouped;
+        _layout = query._layout;
+        _orderKeys = query._orderKeys;
+        _descending = query._descending;
+        _limit = query._limit;
+        _names = query._names;
+    }
+
+    /** Return a query like me, in which the parameters of my conditions
+     *  are replaced by their values in VALUES.  The columns, aggregates
+     *  and ordering that I have resolved are shared rather than
+     *  resolved again. */
+    Query bind(List<String> values) {
+        ArrayList<Condition> conditions = new ArrayList<>();
+        for (Condition cond : _conditions) {
+            conditions.add(cond.bind(values));
+        }
+        return new Query(this, conditions);
+    }
+
+    /** Return a query like me, in which the table in SLOT is replaced by
+     *  TABLE, which has the same columns, and which is subject to
+     *  CONDITIONS as well as to my conditions. */
+    Query replace(int slot, Table table, List<Condition> conditions) {
+        ArrayList<Condition> all = new ArrayList<>(_conditions);
+        all.addAll(conditions);
+        Query result = new Query(this, all);
+        result._tables = _tables.clone();
+        result._tables[slot] = table;
+        return result;
+    }
+
+    /** Return true iff my result can only gain rows as rows are added
+     *  to my tables: that is, iff it is neither grouped, nor ordered, nor
+     *  limited. */
+    boolean isMonotonic() {
+        return !_grouped && _orderKeys.isEmpty() && _limit == -1;
+    }
+
+    /** Record that NAMES are the names of my tables, by which explain
+     *  refers to them. */
+    void setNames(List<String> names) {
+        _names = names;
+    }
+
+    /** Return the tables from which I select. */
+    Table[] tables() {
+        return _tables;
+    }
+
+    /** Return the titles of the columns of my result. */
+    List<String> titles() {
+        return _titles;
+    }
+
+    /** Return the types of the columns of my result. */
+    List<Type> types() {
+        ArrayList<Type> types = new ArrayList<>();
+        for (int i = 0, a = 0; i < _titles.size(); i += 1) {
+            Column col = _columns.get(i);
+            if (col != null) {
+                types.add(col.getType());
+            } else {
+                col = _aggregateColumns.get(a);
+                types.add(_aggregates.get(a).type(col == null ? Type.STRING
+                                                  : col.getType()));
+                a += 1;
+            }
+        }
+        return types;
+    }
+
+    /** Order my result by its column titled TITLE, in descending order
+     *  if DESCENDING, after any columns by which it is already ordered. */
+    void orderBy(String title, boolean descending) {
+        int k = _titles.indexOf(title);
+        if (k == -1) {
+            throw error("cannot order by unselected column: %s", title);
+        }
+        _orderKeys.add(k);
+        _descending.add(descending);
+    }
+
+    /** Limit my result to its first LIMIT rows. */
+    void limit(int limit) {
+        _limit = limit;
+    }
+
+    /** Returns an iterator over the distinct rows of my result, in the
+     *  order given by orderBy, if any, and otherwise in an unspecified
+     *  order.  An ordered result is sorted with an ExternalSort, or, if
+     *  it is limited, by keeping the first rows in a bounded heap.  The
+     *  iterator must be closed if it is not read to the end. */
+    @Override
+    public Pipeline.Operator<Row> iterator() {
+        return pipeline();
+    }
+
+    /** Print to OUTPUT the plan of the operators that produce my result,
+     *  one to a line, each above those from which it reads.  If ANALYZE,
+     *  first produce my result, and follow each operator with the number
+     *  of rows it produced, and the time taken and bytes allocated in
+     *  producing them, including those taken by its inputs.  The parts
+     *  of a parallel step are shown once, with their counts summed. */
+    void explain(PrintStream output, boolean analyze) {
+        Pipeline.Operator<Row> plan = pipeline();
+        try {
+            if (analyze) {
+                plan.analyze();
+                while (plan.hasNext()) {
+                    plan.next();
+                }
+            }
+            Pipeline.explain(Collections.singletonList(plan), "", analyze,
+                             output);
+        } finally {
+            plan.close();
+        }
+    }
+
+    /** Return the operator producing the rows of iterator(). */
+    private Pipeline.Operator<Row> pipeline() {
+        if (_orderKeys.isEmpty()) {
+            Pipeline.Operator<Row> rows = distinctRows();
+            return _limit == -1 ? rows
+                : new Pipeline.Limit(rows, _limit)
+                .describe("Limit " + _limit, rows);
+        }
+        int n = _orderKeys.size();
+        int[] keys = new int[n];
+        Type[] types = new Type[n];
+        boolean[] descending = new boolean[n];
+        List<Type> resultTypes = types();
+        for (int i = 0; i < n; i += 1) {
+            keys[i] = _orderKeys.get(i);
+            types[i] = resultTypes.get(keys[i]);
+            descending[i] = _descending.get(i);
+        }
+        Pipeline.RowOrder order =
+            new Pipeline.RowOrder(keys, types, descending);
+        StringBuilder by = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            by.append(i == 0 ? " by " : ", ").append(_titles.get(keys[i]))
+                .append(descending[i] ? " desc" : "");
+        }
+        Pipeline.Operator<Row> rows = rows();
+        if (_limit != -1) {
+            return new Pipeline.TopK(rows, order, _limit)
+                .describe("Top " + _limit + by, rows);
+        }
+        return new Pipeline.Sort(rows, order, ExternalSort.BUDGET)
+            .describe("Sort" + by, rows);
+    }
+
+    /** Return my result as a new Table. */
+    Table toTable() {
+        Table result = new Table(_titles, types());
+        Pipeline.Operator<Row> rows = _limit == -1 ? rows() : iterator();
+        try {
+            while (rows.hasNext()) {
+                result.add(rows.next());
+            }
+        } finally {
+            rows.close();
+        }
+        return result;
+    }
+
+    /** Return an iterator over the rows of my result, which may contain
+     *  duplicates, and which must be closed if it is not read to the
+     *  end.  A query that parts() divides into several parts is
+     *  filtered and projected, or aggregated, in parallel. */
+    Pipeline.Operator<Row> rows() {
+        List<Pipeline.Operator<Row[]>> parts = parts(candidates());
+        ArrayList<String> selected = new ArrayList<>();
+        for (int i = 0, a = 0; i < _titles.size(); i += 1) {
+            if (_columns.get(i) != null) {
+                selected.add(_titles.get(i));
+            } else {
+                selected.add(_aggregates.get(a).toString());
+                a += 1;
+            }
+        }
+        String items = String.join(", ", selected);
+        if (_grouped) {
+            ArrayList<String> groupBy = new ArrayList<>();
+            for (Column col : _groupBy) {
+                groupBy.add(col.getName());
+            }
+            return new Pipeline.HashAggregate(parts, _groupBy, _aggregates,
+                                              _aggregateColumns, _layout)
+                .describe("Hash aggregate " + items
+                          + (groupBy.isEmpty() ? ""
+                             : " by " + String.join(", ", groupBy)), parts);
+        } else if (parts.size() > 1) {
+            return new Pipeline.ParallelProject(parts, _columns)
+                .describe("Parallel project " + items, parts);
+        }
+        return new Pipeline.Project(parts.get(0), _columns)
+            .describe("Project " + items, parts);
+    }
+
+    /** Return an iterator over the distinct rows of my result. */
+    private Pipeline.Operator<Row> distinctRows() {
+        Pipeline.Operator<Row> rows = rows();
+        return new Pipeline.Dedupe(rows).describe("Dedupe", rows);
+    }
+
+    /** Return the position among my group by columns of the one named
+     *  NAME, throwing a DBException if there is none. */
+    private int groupNumber(String name) {
+        for (int k = 0; k < _groupBy.size(); k += 1) {
+            if (_groupBy.get(k).getName().equals(name)) {
+                return k;
+            }
+        }
+        throw error("%s must be grouped or aggregated", name);
+    }
+
+    /** Return the rows of each of my tables that may satisfy my
+     *  conditions, as given by Table.candidates, indexed by slot.  They
+     *  are found once each time my result is computed, and passed to
+     *  the methods that plan it. */
+    private List<Collection<Row>> candidates() {
+        ArrayList<Collection<Row>> result = new ArrayList<>();
+        for (int slot = 0; slot < _tables.length; slot += 1) {
+            result.add(_tables[slot].candidates(_conditions, slot));
+        }
+        return result;
+    }
+
+    /** Return iterators over disjoint parts of the tuples produced by
+     *  tuples(CANDIDATES), which together produce all of them.  A query
+     *  on a single table with at least PARALLEL_ROWS candidate rows is
+     *  divided into several parts, so that they may be processed in
+     *  parallel; otherwise there is just one part.  CANDIDATES is as
+     *  returned by candidates(). */
+    private List<Pipeline.Operator<Row[]>> parts(
+        List<Collection<Row>> candidates) {
+        Collection<Row> rows = candidates.get(0);
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        if (_tables.length > 1 || threads < 2
+            || rows.size() < PARALLEL_ROWS) {
+            return Collections.singletonList(tuples(candidates));
+        }
+        ArrayList<Spliterator<Row>> splits = new ArrayList<>();
+        splits.add(rows.spliterator());
+        for (boolean progress = true;
+             progress && splits.size() < PARTS_PER_THREAD * threads; ) {
+            progress = false;
+            for (int i = splits.size() - 1; i >= 0; i -= 1) {
+                Spliterator<Row> half = splits.get(i).trySplit();
+                if (half != null) {
+                    splits.add(half);
+                    progress = true;
+                }
+            }
+        }
+        ArrayList<Pipeline.Operator<Row[]>> parts = new ArrayList<>();
+        for (Spliterator<Row> split : splits) {
+            Pipeline.Operator<Row[]> part =
+                new Pipeline.Scan(1, 0, () -> Spliterators.iterator(split))
+                .describe(scan(0, rows));
+            if (!_conditions.isEmpty()) {
+                part = new Pipeline.Filter(part, _conditions)
+                    .describe("Filter " + conjunction(_conditions), part);
+            }
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /** Return an iterator over the tuples of rows from my tables that
+     *  satisfy my conditions and agree on their common columns.  The
+     *  tables are joined in the order given by joinOrder, and each
+     *  condition is tested as soon as the tables it refers to have been
+     *  joined.  A table is joined by merging when the tuples joined so far
+     *  are in order of its join key and it is indexed on that key, or
+     *  when it has more candidate rows than a sort may hold in memory, so
+     *  that both sides are sorted with an ExternalSort rather than
+     *  hashed.  Otherwise it is joined by hashing.  CANDIDATES is as
+     *  returned by candidates(). */
+    private Pipeline.Operator<Row[]> tuples(List<Collection<Row>> candidates) {
+        int n = _tables.length;
+        int[] order = joinOrder(candidates);
+        boolean[] bound = new boolean[n];
+        ArrayList<Condition> pending = new ArrayList<>(_conditions);
+
+        int first = order[0];
+        Collection<Row> firstRows = candidates.get(first);
+        Iterable<Row> rows = firstRows;
+        String label = scan(first, firstRows);
+        String sortedOn = null;
+        Type sortedType = null;
+        if (n > 1) {
+            String title = mergeKey(first, order[1]);
+            if (title != null && isSortable(first, title, candidates)
+                && isSortable(order[1], title, candidates)) {
+                int k = _tables[first].findColumn(title);
+                rows = _tables[first].sorted(k);
+                label = "Index scan of " + name(first) + " in order of "
+                    + title;
+                sortedOn = title;
+                sortedType = _tables[first].getType(k);
+            }
+        }
+        Pipeline.Operator<Row[]> tuples =
+            new Pipeline.Scan(n, first, rows).describe(label);
+        bound[first] = true;
+        tuples = filter(tuples, pending, bound);
+        for (int i = 1; i < n; i += 1) {
+            int slot = order[i];
+            Table table = _tables[slot];
+            ArrayList<Integer> buildKey = new ArrayList<>();
+            ArrayList<Column> probeKey = new ArrayList<>();
+            for (int c = 0; c < table.columns(); c += 1) {
+                String title = table.getTitle(c);
+                for (int b = 0; b < n; b += 1) {
+                    if (bound[b] && _tables[b].findColumn(title) != -1) {
+                        buildKey.add(c);
+                        probeKey.add(new Column(title, b, _tables[b]));
+                        break;
+                    }
+                }
+            }
+            int[] key = new int[buildKey.size()];
+            ArrayList<Column> rowKey = new ArrayList<>();
+            Type[] types = new Type[key.length];
+            boolean mergeable = key.length > 0;
+            for (int k = 0; k < key.length; k += 1) {
+                key[k] = buildKey.get(k);
+                rowKey.add(new Column(table.getTitle(key[k]), slot, table));
+                types[k] = table.getType(key[k]);
+                mergeable &= types[k] != Type.DOUBLE
+                    && types[k] == probeKey.get(k).getType();
+            }
+            Collection<Row> slotRows = candidates.get(slot);
+            String title = key.length == 1 ? table.getTitle(key[0]) : null;
+            boolean inOrder = title != null && title.equals(sortedOn)
+                && types[0] == sortedType;
+            String on = " on " + titles(rowKey);
+            if (mergeable && inOrder
+                && isSortable(slot, title, candidates)) {
+                Pipeline.Operator<Row[]> sorted =
+                    new Pipeline.Scan(n, slot, table.sorted(key[0]))
+                    .describe("Index scan of " + name(slot) + " in order of "
+                              + title);
+                tuples = new Pipeline.MergeJoin(tuples, probeKey, sorted,
+                                                rowKey, types, slot)
+                    .describe("Merge join" + on, tuples, sorted);
+            } else if (mergeable && slotRows.size() > ExternalSort.BUDGET) {
+                if (!inOrder) {
+                    tuples = new Pipeline.TupleSort(
+                        tuples,
+                        new ExternalSort(new Pipeline.KeyOrder(probeKey,
+                                                               types),
+                                         ExternalSort.BUDGET))
+                        .describe("External sort by " + titles(probeKey),
+                                  tuples);
+                }
+                Pipeline.Operator<Row[]> sorted;
+                if (title != null && isSortable(slot, title, candidates)) {
+                    sorted = new Pipeline.Scan(n, slot, table.sorted(key[0]))
+                        .describe("Index scan of " + name(slot)
+                                  + " in order of " + title);
+                } else {
+                    Pipeline.Operator<Row[]> scan =
+                        new Pipeline.Scan(n, slot, slotRows)
+                        .describe(scan(slot, slotRows));
+                    sorted = new Pipeline.TupleSort(
+                        scan,
+                        new ExternalSort(new Pipeline.KeyOrder(rowKey, types),
+                                         ExternalSort.BUDGET))
+                        .describe("External sort by " + titles(rowKey),
+                                  scan);
+                }
+                tuples = new Pipeline.MergeJoin(tuples, probeKey, sorted,
+                                                rowKey, types, slot)
+                    .describe("Merge join" + on, tuples, sorted);
+                sortedOn = table.getTitle(key[0]);
+                sortedType = types[0];
+            } else if (key.length == 0) {
+                tuples = new Pipeline.HashJoin(tuples, slot, slotRows,
+                                               key, probeKey)
+                    .describe("Nested loop join with "
+                              + source(slot, slotRows), tuples);
+            } else {
+                tuples = new Pipeline.HashJoin(tuples, slot, slotRows,
+                                               key, probeKey)
+                    .describe("Hash join with " + source(slot, slotRows)
+                              + on, tuples);
+            }
+            bound[slot] = true;
+            tuples = filter(tuples, pending, bound);
+        }
+        return tuples;
+    }
+
+    /** Return the title of the only column that the tables in slots SLOT1
+     *  and SLOT2 have in common, or null if they do not have exactly
+     *  one. */
+    private String mergeKey(int slot1, int slot2) {
+        String result = null;
+        Table table = _tables[slot1];
+        for (int c = 0; c < table.columns(); c += 1) {
+            String title = table.getTitle(c);
+            if (_tables[slot2].findColumn(title) != -1) {
+                if (result != null) {
+                    return null;
+                }
+                result = title;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff the table in SLOT can be read in order of its
+     *  column TITLE through an index, which is so if that column is
+     *  indexed and no index narrows the rows that can satisfy my
+     *  conditions.  CANDIDATES is as returned by candidates(). */
+    private boolean isSortable(int slot, String title,
+                               List<Collection<Row>> candidates) {
+        Table table = _tables[slot];
+        int k = table.findColumn(title);
+        return table.hasIndex(k) && table.getType(k) != Type.DOUBLE
+            && candidates.get(slot).size() == table.size();
+    }
+
+    /** Return the order in which to join my tables, as a permutation of
+     *  their slots.  Each table after the first is hashed and probed with
+     *  the tuples joined so far, so the cost of an order is estimated as
+     *  the number of rows hashed plus the number of tuples produced by
+     *  each join.  For each possible first table, the remaining tables
+     *  are added greedily, preferring those that share columns with the
+     *  tables already joined and then those that give the smallest
+     *  estimated result; the cheapest of these orders is returned.
+     *  CANDIDATES is as returned by candidates(). */
+    private int[] joinOrder(List<Collection<Row>> candidates) {
+        int n = _tables.length;
+        double[] rows = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            rows[i] = estimate(i, candidates.get(i));
+        }
+        int[] best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int first = 0; first < n; first += 1) {
+            int[] order = new int[n];
+            boolean[] bound = new boolean[n];
+            order[0] = first;
+            bound[first] = true;
+            double size = rows[first], cost = 0;
+            for (int i = 1; i < n; i += 1) {
+                int next = -1;
+                boolean nextJoins = false;
+                double nextSize = 0;
+                for (int slot = 0; slot < n; slot += 1) {
+                    if (bound[slot]) {
+                        continue;
+                    }
+                    double reduction = reduction(slot, bound);
+                    boolean joins = reduction > 0;
+                    double joined =
+                        size * rows[slot] / Math.max(1, reduction);
+                    if (next == -1 || (joins && !nextJoins)
+                        || (joins == nextJoins && joined < nextSize)) {
+                        next = slot;
+                        nextJoins = joins;
+                        nextSize = joined;
+                    }
+                }
+                order[i] = next;
+                bound[next] = true;
+                cost += rows[next] + nextSize;
+                size = nextSize;
+            }
+            if (cost < bestCost) {
+                best = order;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /** Return the estimated number of rows of the table in SLOT that
+     *  satisfy those of my conditions that compare its columns with
+     *  literals.  Conditions that an index can satisfy are accounted for
+     *  by Table.candidates; each other = condition is assumed to select
+     *  one distinct value of its column, and each range condition a
+     *  third of the rows.  CANDIDATES are the candidate rows of that
+     *  table. */
+    private double estimate(int slot, Collection<Row> candidates) {
+        Table table = _tables[slot];
+        double rows = candidates.size();
+        for (Condition cond : _conditions) {
+            Column col = cond.getColumn();
+            if (cond.getLiteral() == null || col.tableNumber() != slot
+                || table.hasIndex(col.columnNumber())) {
+                continue;
+            }
+            double distinct =
+                Math.max(1, table.distinctValues(col.columnNumber()));
+            switch (cond.getRelation()) {
+            case EQ:
+                rows /= distinct;
+                break;
+            case NE:
+                rows *= 1 - 1 / distinct;
+                break;
+            default:
+                rows /= RANGE_SELECTIVITY;
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /** Return the factor by which joining the table in SLOT with the
+     *  tables marked in BOUND reduces the size of their cross product, or
+     *  0 if it shares no columns with them.  For each common column, the
+     *  factor is the larger of the numbers of distinct values of that
+     *  column on either side. */
+    private double reduction(int slot, boolean[] bound) {
+        Table table = _tables[slot];
+        double result = 0;
+        for (int c = 0; c < table.columns(); c += 1) {
+            String title = table.getTitle(c);
+            double distinct = -1;
+            for (int b = 0; b < _tables.length; b += 1) {
+                int k = bound[b] ? _tables[b].findColumn(title) : -1;
+                if (k != -1) {
+                    double d = _tables[b].distinctValues(k);
+                    distinct = distinct == -1 ? d : Math.min(distinct, d);
+                }
+            }
+            if (distinct != -1) {
+                distinct = Math.max(distinct, table.distinctValues(c));
+                result = Math.max(1, result) * Math.max(1, distinct);
+            }
+        }
+        return result;
+    }
+
+    /** Return INPUT filtered by those of PENDING that refer only to tables
+     *  whose slots are marked in BOUND, removing them from PENDING. */
+    private static Pipeline.Operator<Row[]> filter(
+        Pipeline.Operator<Row[]> input, List<Condition> pending,
+        boolean[] bound) {
+        ArrayList<Condition> ready = new ArrayList<>();
+        for (Iterator<Condition> i = pending.iterator(); i.hasNext(); ) {
+            Condition cond = i.next();
+            Column col2 = cond.getColumn2();
+            if (bound[cond.getColumn().tableNumber()]
+                && (col2 == null || bound[col2.tableNumber()])) {
+                ready.add(cond);
+                i.remove();
+            }
+        }
+        if (ready.isEmpty()) {
+            return input;
+        }
+        return new Pipeline.Filter(input, ready)
+            .describe("Filter " + conjunction(ready), input);
+    }
+
+    /** Return CONDITIONS, joined by "and". */
+    private static String conjunction(List<Condition> conditions) {
+        ArrayList<String> terms = new ArrayList<>();
+        for (Condition cond : conditions) {
+            terms.add(cond.toString());
+        }
+        return String.join(" and ", terms);
+    }
+
+    /** Return the names of COLUMNS, separated by commas. */
+    private static String titles(List<Column> columns) {
+        ArrayList<String> titles = new ArrayList<>();
+        for (Column col : columns) {
+            titles.add(col.getName());
+        }
+        return String.join(", ", titles);
+    }
+
+    /** Return a description of the reading of ROWS, the candidate rows
+     *  of the table in SLOT, which are found through an index if there
+     *  are fewer of them than of the table's rows. */
+    private String scan(int slot, Collection<Row> rows) {
+        if (rows.size() < _tables[slot].size()) {
+            return String.format("Index scan of %s (%d of %d rows)",
+                                 name(slot), rows.size(),
+                                 _tables[slot].size());
+        }
+        return "Scan of " + name(slot);
+    }
+
+    /** Return a description of ROWS, the candidate rows of the table in
+     *  SLOT, as the table's name, followed by the number of them if they
+     *  are found through an index. */
+    private String source(int slot, Collection<Row> rows) {
+        if (rows.size() < _tables[slot].size()) {
+            return String.format("%s (index, %d of %d rows)", name(slot),
+                                 rows.size(), _tables[slot].size());
+        }
+        return name(slot);
+    }
+
+    /** Return the name of the table in SLOT, or its position if its name
+     *  is unknown. */
+    private String name(int slot) {
+        if (_names == null) {
+            return "table " + (slot + 1);
+        }
+        return _names.get(slot);
+    }
+
+    /** The tables from which I select. */
+    private Table[] _tables;
+    /** The names of _tables, or null if unknown. */
+    private List<String> _names;
+    /** Titles of my result columns. */
+    private ArrayList<String> _titles;
+    /** The columns I select, with null in place of each aggregate. */
+    private ArrayList<Column> _columns;
+    /** The aggregates I select, in order. */
+    private ArrayList<Aggregate> _aggregates;
+    /** The columns summarized by _aggregates, or null for those that
+     *  count whole tuples. */
+    private ArrayList<Column> _aggregateColumns;
+    /** The columns by which my result is grouped. */
+    private ArrayList<Column> _groupBy;
+    /** True iff my result is grouped. */
+    private boolean _grouped;
+    /** If _grouped, the positions of my result values among the group
+     *  by values and aggregate values of a group. */
+    private int[] _layout;
+    /** The numbers of the result columns by which my result is
+     *  ordered. */
+    private ArrayList<Integer> _orderKeys = new ArrayList<>();
+    /** Whether each of _orderKeys is in descending order. */
+    private ArrayList<Boolean> _descending = new ArrayList<>();
+    /** The maximum number of rows in my result, or -1 if unlimited. */
+    private int _limit = -1;
+    /** Conditions on my result. */
+    private List<Condition> _conditions;
+}
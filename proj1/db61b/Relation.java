@@ -0,0 +1,72 @@
+package db61b;
+
+import static db61b.Utils.*;
+
+/** The relations that may appear in a 'where' condition.
+ *  @author Bo Liu
+ */
+enum Relation {
+    /** The relations, with their symbols. */
+    EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+    /** A relation denoted by SYMBOL. */
+    Relation(String symbol) {
+        _symbol = symbol;
+    }
+
+    /** Return the Relation denoted by SYMBOL, which must be one of "<",
+     *  ">", "<=", ">=", "=", or "!=". */
+    static Relation parse(String symbol) {
+        for (Relation rel : values()) {
+            if (rel._symbol.equals(symbol)) {
+                return rel;
+            }
+        }
+        throw error("No such relation.");
+    }
+
+    /** Return true iff two values that compare as COMPARISON (as from
+     *  compareTo) stand in this relation. */
+    boolean holds(int comparison) {
+        switch (this) {
+        case EQ:
+            return comparison == 0;
+        case NE:
+            return comparison != 0;
+        case LT:
+            return comparison < 0;
+        case LE:
+            return comparison <= 0;
+        case GT:
+            return comparison > 0;
+        default:
+            return comparison >= 0;
+        }
+    }
+
+    /** Return true iff X REL V gives a lower bound V on the values of X:
+     *  that is, if this is =, > or >=. */
+    boolean isLowerBound() {
+        return this == EQ || this == GT || this == GE;
+    }
+
+    /** Return true iff X REL V gives an upper bound V on the values of
+     *  X: that is, if this is =, < or <=. */
+    boolean isUpperBound() {
+        return this == EQ || this == LT || this == LE;
+    }
+
+    /** Return true iff this relation excludes equal values, other than
+     *  !=. */
+    boolean isStrict() {
+        return this == LT || this == GT;
+    }
+
+    @Override
+    public String toString() {
+        return _symbol;
+    }
+
+    /** My symbol. */
+    private final String _symbol;
+}
@@ -0,0 +1,97 @@
+package db61b;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A bounded cache of the results of select statements, which the
+ *  sessions of a database share.  A result is keyed by the text of its
+ *  select clause together with the serial number and version of each
+ *  table it reads, so adding a row to one of those tables, or replacing
+ *  one, makes the result unreachable.  Results are evicted in
+ *  least-recently-used order once those cached weigh more than a fixed
+ *  number of rows, each result weighing one more than its number of
+ *  rows.
+ *  @author Bo Liu
+ */
+class ResultCache {
+
+    /** Default maximum total weight of cached results.  Set with the
+     *  property db61b.cacheRows; 0 disables caching. */
+    static final int ROWS = Integer.getInteger("db61b.cacheRows", 1 << 16);
+    /** Initial capacity of the table of results. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** The default load factor of a LinkedHashMap. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** An empty cache holding results weighing at most ROWS in all. */
+    ResultCache(int rows) {
+        _rows = rows;
+        _results = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    }
+
+    /** Return the maximum number of rows in a result that I may hold. */
+    int limit() {
+        return _rows - 1;
+    }
+
+    /** Return the key of the result of the select clause TEXT, whose
+     *  tokens are separated by single blanks, reading TABLES in their
+     *  current versions. */
+    static String key(String text, Table... tables) {
+        StringBuilder key = new StringBuilder(text);
+        for (Table table : tables) {
+            key.append('@').append(table.serial())
+                .append('.').append(table.version());
+        }
+        return key.toString();
+    }
+
+    /** Return the result cached under KEY, or null if there is none,
+     *  counting a hit or a miss accordingly. */
+    synchronized List<Row> get(String key) {
+        List<Row> result = _results.get(key);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Cache RESULT under KEY, evicting the least recently used results
+     *  as needed to make room. */
+    synchronized void put(String key, List<Row> result) {
+        if (result.size() > limit()) {
+            return;
+        }
+        List<Row> old = _results.put(key, result);
+        if (old != null) {
+            _weight -= old.size() + 1;
+        }
+        _weight += result.size() + 1;
+        Iterator<Map.Entry<String, List<Row>>> i =
+            _results.entrySet().iterator();
+        while (_weight > _rows && i.hasNext()) {
+            _weight -= i.next().getValue().size() + 1;
+            i.remove();
+        }
+    }
+
+    /** Return a description of my use so far. */
+    synchronized String stats() {
+        return String.format("%d hits, %d misses, %d results cached "
+                             + "(%d rows)", _hits, _misses, _results.size(),
+                             _weight - _results.size());
+    }
+
+    /** Maximum total weight of my results. */
+    private int _rows;
+    /** Cached results by key, in order of last use. */
+    private LinkedHashMap<String, List<Row>> _results;
+    /** Total weight of _results. */
+    private int _weight;
+    /** Numbers of lookups that found and did not find a result. */
+    private long _hits, _misses;
+}
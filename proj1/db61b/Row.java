@@ -4,7 +4,9 @@ import java.util.Arrays;
 import java.util.List;
 import static db61b.Utils.*;
 
-/** A single row of a database.
+/** A single row of a database.  A row caches its hash code, which
+ *  cannot change once it is in a table, since only canonicalize, which
+ *  tables apply before adding rows, changes its values.
  *  @author Bo Liu
  */
 class Row {
@@ -47,13 +49,119 @@ class Row {
         }
     }
 
+    /** Replace each of my values with the equal value kept in the
+     *  corresponding dictionary in DICTS, adding it there if needed, so
+     *  that equal values in different rows share one String.  Columns
+     *  whose dictionary is null are left alone.  This does not change
+     *  my contents, only how they are stored, and my values are copied
+     *  before any is replaced, so the array I was made from is left
+     *  alone. */
+    void intern(Dictionary[] dicts) {
+        int n = Math.min(_data.length, dicts.length);
+        String[] data = _data;
+        for (int i = 0; i < n; i += 1) {
+            if (dicts[i] != null) {
+                String value = dicts[i].intern(data[i]);
+                if (value != data[i]) {
+                    if (data == _data) {
+                        data = _data.clone();
+                    }
+                    data[i] = value;
+                }
+            }
+        }
+        _data = data;
+    }
+
+    /** Replace each of my values with its canonical form for the type in
+     *  the corresponding position of TYPES, throwing a DBException if it
+     *  is not a valid value of that type, and keep the numbers denoted by
+     *  my numeric values, so that they are not parsed again.  As for
+     *  intern, my values are copied before any is replaced. */
+    void canonicalize(Type[] types) {
+        int n = Math.min(_data.length, types.length);
+        String[] data = _data;
+        int numeric = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (types[i] != Type.STRING) {
+                numeric += 1;
+            }
+        }
+        long[] numbers = numeric == 0 ? null : new long[numeric];
+        for (int i = 0, j = 0; i < n; i += 1) {
+            String value = types[i].canonical(data[i]);
+            if (value != data[i]) {
+                if (data == _data) {
+                    data = _data.clone();
+                }
+                data[i] = value;
+            }
+            if (types[i] == Type.INT) {
+                numbers[j] = Long.parseLong(data[i]);
+                j += 1;
+            } else if (types[i] == Type.DOUBLE) {
+                numbers[j] =
+                    Double.doubleToLongBits(Double.parseDouble(data[i]));
+                j += 1;
+            }
+        }
+        _data = data;
+        _numbers = numbers;
+        _types = types;
+        _hash = 0;
+    }
+
+    /** Return true iff my values were last put in canonical form for
+     *  TYPES, and so need not be again. */
+    boolean isCanonical(Type[] types) {
+        return _types == types;
+    }
+
+    /** Return the number denoted by my Kth value, which is an INT. */
+    long integer(int k) {
+        if (_numbers != null && _types[k] == Type.INT) {
+            return _numbers[slot(k)];
+        }
+        return Long.parseLong(_data[k]);
+    }
+
+    /** Return the number denoted by my Kth value, which is numeric. */
+    double real(int k) {
+        if (_numbers != null && _types[k] == Type.DOUBLE) {
+            return Double.longBitsToDouble(_numbers[slot(k)]);
+        } else if (_numbers != null && _types[k] == Type.INT) {
+            return _numbers[slot(k)];
+        }
+        return Double.parseDouble(_data[k]);
+    }
+
+    /** Return the index in _numbers of the number denoted by my Kth
+     *  value, which is numeric: the number of numeric values before it. */
+    private int slot(int k) {
+        int j = 0;
+        for (int i = 0; i < k; i += 1) {
+            if (_types[i] != Type.STRING) {
+                j += 1;
+            }
+        }
+        return j;
+    }
+
     @Override
     public boolean equals(Object obj) {
-        if (this.size() != ((Row) obj).size()) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof Row)) {
             return false;
         }
-        for (int i = 0; i < this.size(); i += 1) {
-            if (!(this.get(i).equals(((Row) obj).get(i)))) {
+        Row other = (Row) obj;
+        if (_data.length != other._data.length
+            || hashCode() != other.hashCode()) {
+            return false;
+        }
+        for (int i = 0; i < _data.length; i += 1) {
+            String value = _data[i];
+            if (value != other._data[i] && !value.equals(other._data[i])) {
                 return false;
             }
         }
@@ -70,9 +178,23 @@ class Row {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(_data);
+        int h = _hash;
+        if (h == 0) {
+            h = Arrays.hashCode(_data);
+            _hash = h;
+        }
+        return h;
     }
 
     /** Contents of this row. */
     private String[] _data;
+    /** The types for which my values were last made canonical, or
+     *  null. */
+    private Type[] _types;
+    /** If _types is not null, the numbers denoted by my values of
+     *  numeric types, in order: longs for INTs, and the bits of doubles
+     *  for DOUBLEs.  Null if I have no numeric values. */
+    private long[] _numbers;
+    /** My hash code, or 0 if it has not been computed. */
+    private int _hash;
 }
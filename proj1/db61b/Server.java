@@ -0,0 +1,174 @@
+package db61b;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** A server through which several local clients share one Database.
+ *  Clients connect to a port on the loopback interface, and each is
+ *  served by its own CommandInterpreter in its own thread, which reads
+ *  statements from the connection and writes prompts and results to it,
+ *  just as db61b does for its standard input.  At most a fixed number of
+ *  clients are served at once; others are told so and disconnected.
+ *  Statements that read a table hold a shared lock on it, and those that
+ *  change it an exclusive one, so that selects proceed together while
+ *  each insert waits only for those reading the table it changes.
+ *  @author Bo Liu
+ */
+class Server {
+
+    /** The port on which a server listens by default. */
+    static final int DEFAULT_PORT = 6161;
+    /** Maximum number of connections waiting to be accepted. */
+    private static final int BACKLOG = 50;
+    /** Default maximum number of clients served at once.  Set with the
+     *  property db61b.sessions. */
+    static final int SESSIONS = Integer.getInteger("db61b.sessions", 64);
+    /** Seconds for which a thread with no session is kept for the next
+     *  one. */
+    private static final long KEEP_ALIVE = 60;
+    /** Milliseconds waited after the first of consecutive failures to
+     *  accept a connection. */
+    private static final long MIN_BACKOFF = 10;
+    /** Most milliseconds waited after a failure to accept a
+     *  connection. */
+    private static final long MAX_BACKOFF = 1000;
+
+    /** A server with an empty database, listening on PORT of the
+     *  loopback interface, or on any free port if PORT is 0, that
+     *  serves at most the default number of clients at once. */
+    Server(int port) throws IOException {
+        this(port, SESSIONS);
+    }
+
+    /** A server with an empty database, listening on PORT of the
+     *  loopback interface, or on any free port if PORT is 0, that
+     *  serves at most SESSIONS clients at once. */
+    Server(int port, int sessions) throws IOException {
+        _socket = new ServerSocket(port, BACKLOG,
+                                   InetAddress.getLoopbackAddress());
+        _database = new Database();
+        _sessions =
+            new ThreadPoolExecutor(0, sessions, KEEP_ALIVE, TimeUnit.SECONDS,
+                                   new SynchronousQueue<>(), runnable -> {
+                                       Thread thread = new Thread(runnable);
+                                       thread.setDaemon(true);
+                                       return thread;
+                                   }) {
+                @Override
+                protected void terminated() {
+                    _database.close();
+                }
+            };
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Serve each client that connects in a thread of its own, until I
+     *  am closed or the current thread is interrupted.  After each of a
+     *  run of failures to accept a connection, wait twice as long as
+     *  after the one before, from MIN_BACKOFF up to MAX_BACKOFF
+     *  milliseconds, rather than retrying at once. */
+    void serve() {
+        long backoff = 0;
+        while (!_socket.isClosed()) {
+            Socket client;
+            try {
+                client = _socket.accept();
+                backoff = 0;
+            } catch (IOException e) {
+                if (_socket.isClosed()) {
+                    break;
+                }
+                backoff = Math.min(MAX_BACKOFF,
+                                   Math.max(MIN_BACKOFF, 2 * backoff));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException x) {
+                    break;
+                }
+                continue;
+            }
+            try {
+                _sessions.execute(() -> session(client));
+            } catch (RejectedExecutionException e) {
+                refuse(client);
+            }
+        }
+    }
+
+    /** Stop accepting clients.  Sessions already begun continue, and
+     *  when the last has ended, the logs of my database are closed. */
+    void close() {
+        try {
+            _socket.close();
+        } catch (IOException e) {
+            /* Ignore: the socket is no longer needed. */
+        }
+        _sessions.shutdown();
+    }
+
+    /** Tell CLIENT that it cannot be served now, and close the
+     *  connection. */
+    private void refuse(Socket client) {
+        try {
+            client.getOutputStream().write(
+                "Error: too many sessions\n".getBytes(UTF_8));
+        } catch (IOException e) {
+            /* The client has gone. */
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                /* Ignore: the connection is no longer needed. */
+            }
+        }
+    }
+
+    /** Execute the statements sent by CLIENT until it quits or
+     *  disconnects, and then close the connection. */
+    private void session(Socket client) {
+        try {
+            PrintStream output =
+                new PrintStream(new BufferedOutputStream(
+                    client.getOutputStream()), false, "UTF-8");
+            CommandInterpreter interpreter =
+                new CommandInterpreter(
+                    new InputStreamReader(client.getInputStream(), UTF_8),
+                    output, _database);
+            try {
+                interpreter.interpret();
+            } finally {
+                output.flush();
+            }
+        } catch (IOException | DBException e) {
+            /* The client has gone. */
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                /* Ignore: the connection is no longer needed. */
+            }
+        }
+    }
+
+    /** Accepts connections. */
+    private ServerSocket _socket;
+    /** The database shared by all sessions. */
+    private Database _database;
+    /** Runs the sessions, each in its own thread. */
+    private ThreadPoolExecutor _sessions;
+}
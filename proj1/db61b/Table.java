@@ -1,24 +1,61 @@
 package db61b;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static db61b.Utils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /** A single table in a database.
  *  @author Bo Liu
  */
 class Table implements Iterable<Row> {
+    /** Number of rows added between checks for columns whose values are
+     *  mostly distinct. */
+    private static final int DICTIONARY_CHECK = 1 << 12;
+    /** Size in characters of the buffer used by writeTable. */
+    private static final int WRITE_BUFFER = 1 << 16;
+    /** The default load factor of a HashSet. */
+    private static final float LOAD_FACTOR = 0.75f;
+    /** The source of serial numbers of tables. */
+    private static final AtomicLong SERIALS = new AtomicLong();
+
     /** A new Table whose columns are given by COLUMNTITLES, which may
-     *  not contain dupliace names. */
+     *  not contain dupliace names.  All columns have type STRING. */
     Table(String[] columnTitles) {
+        this(columnTitles, null);
+    }
+
+    /** A new Table whose columns are given by COLUMNTITLES, which may
+     *  not contain dupliace names, and whose respective types are
+     *  COLUMNTYPES.  A null COLUMNTYPES makes every column a STRING. */
+    Table(String[] columnTitles, Type[] columnTypes) {
         for (int i = columnTitles.length - 1; i >= 1; i -= 1) {
             for (int j = i - 1; j >= 0; j -= 1) {
                 if (columnTitles[i].equals(columnTitles[j])) {
@@ -28,6 +65,17 @@ class Table implements Iterable<Row> {
             }
         }
         _columnTitles = columnTitles;
+        _columnTypes = new Type[columnTitles.length];
+        for (int i = 0; i < columnTitles.length; i += 1) {
+            _columnTypes[i] =
+                columnTypes == null ? Type.STRING : columnTypes[i];
+            _typed |= _columnTypes[i] != Type.STRING;
+        }
+        _indexes = new Index[columnTitles.length];
+        _dictionaries = new Dictionary[columnTitles.length];
+        for (int i = 0; i < _dictionaries.length; i += 1) {
+            _dictionaries[i] = new Dictionary();
+        }
     }
 
     /** A new Table whose columns are give by COLUMNTITLES. */
@@ -35,6 +83,13 @@ class Table implements Iterable<Row> {
         this(columnTitles.toArray(new String[columnTitles.size()]));
     }
 
+    /** A new Table whose columns are give by COLUMNTITLES, with the
+     *  respective types COLUMNTYPES. */
+    Table(List<String> columnTitles, List<Type> columnTypes) {
+        this(columnTitles.toArray(new String[columnTitles.size()]),
+             columnTypes.toArray(new Type[columnTypes.size()]));
+    }
+
     /** Return the number of columns in this table. */
     public int columns() {
         return _columnTitles.length;
@@ -48,6 +103,11 @@ class Table implements Iterable<Row> {
         throw error("IndexOutOfBounds");
     }
 
+    /** Return the type of the Kth column.  Requires 0 <= K < columns(). */
+    public Type getType(int k) {
+        return _columnTypes[k];
+    }
+
     /** Return the number of the column whose title is TITLE, or -1 if
      *  there isn't one. */
     public int findColumn(String title) {
@@ -70,34 +130,396 @@ class Table implements Iterable<Row> {
         return _rows.iterator();
     }
 
+    /** Return the number of distinct values in the Kth column, or size()
+     *  if the column's values are mostly distinct.  Requires 0 <= K <
+     *  columns(). */
+    public int distinctValues(int k) {
+        if (_dictionaries[k] == null) {
+            return size();
+        }
+        return _dictionaries[k].size();
+    }
+
     /** Add ROW to THIS if no equal row already exists.  Return true if anything
-     *  was added, false otherwise. */
+     *  was added, false otherwise.  The values of ROW are checked
+     *  against the types of my columns and interned in my column
+     *  dictionaries, and ROW is added to my indexes and my log, if I have
+     *  one, and then to the views of me. */
     public boolean add(Row row) {
-        return _rows.add(row);
+        if (!insert(row)) {
+            return false;
+        }
+        for (View view : _views) {
+            view.added(this, Collections.singletonList(row));
+        }
+        return true;
+    }
+
+    /** Add each of ROWS to THIS, as for add, first making room for all
+     *  of them at once if there are more of them than my rows.  The
+     *  views of me are brought up to date once, for all the rows added.
+     *  Return the number of rows added. */
+    public int addAll(Collection<Row> rows) {
+        if (rows.size() > size()) {
+            HashSet<Row> bigger = new HashSet<>(
+                (int) ((size() + rows.size()) / LOAD_FACTOR) + 1);
+            bigger.addAll(_rows);
+            _rows = bigger;
+        }
+        ArrayList<Row> added = new ArrayList<>();
+        for (Row row : rows) {
+            if (insert(row)) {
+                added.add(row);
+            }
+        }
+        if (!added.isEmpty()) {
+            for (View view : _views) {
+                view.added(this, added);
+            }
+        }
+        return added.size();
+    }
+
+    /** Add ROW to THIS, as for add, but without bringing the views of me
+     *  up to date.  Return true iff it was added. */
+    private boolean insert(Row row) {
+        check(row);
+        if (!_rows.add(row)) {
+            return false;
+        }
+        row.intern(_dictionaries);
+        _version += 1;
+        if (_rows.size() % DICTIONARY_CHECK == 0) {
+            dropDictionaries();
+        }
+        for (Index index : _indexes) {
+            if (index != null) {
+                index.add(row);
+            }
+        }
+        if (_log != null) {
+            _log.append(row);
+        }
+        return true;
+    }
+
+    /** Append each row subsequently added to me to LOG, or to no log if
+     *  LOG is null. */
+    void setLog(WriteAheadLog.Log log) {
+        _log = log;
+    }
+
+    /** Check that ROW has the right number of values, and that they
+     *  are valid for the types of my columns, converting them to
+     *  canonical form, and throw a DBException if they are not. */
+    void check(Row row) {
+        if (row.size() != columns()) {
+            throw error("wrong number of values: expected %d", columns());
+        }
+        if (_typed && !row.isCanonical(_columnTypes)) {
+            row.canonicalize(_columnTypes);
+        }
+    }
+
+    /** Intern my values, and those of the rows later added to me, in
+     *  VALUES, so that I share them with the other tables that use
+     *  VALUES.  Only the columns whose values I intern in my own
+     *  dictionaries, and which have so far had at most one distinct
+     *  value for every two rows, are affected; others are checked again
+     *  as rows are added. */
+    void share(ValueDictionary values) {
+        if (values == _values) {
+            return;
+        }
+        _values = values;
+        shareDictionaries();
+    }
+
+    /** Stop interning the values of columns that are mostly distinct,
+     *  since their dictionaries cost more than they save, and share the
+     *  values of the rest. */
+    private void dropDictionaries() {
+        for (int k = 0; k < columns(); k += 1) {
+            Dictionary dict = _dictionaries[k];
+            if (dict != null && 2 * dict.size() > size()) {
+                _dictionaries[k] = null;
+            }
+        }
+        shareDictionaries();
+    }
+
+    /** Have each of my dictionaries that holds at most one distinct
+     *  value for every two of my rows take its values from the
+     *  ValueDictionary I share, if any, and intern my rows again if any
+     *  did. */
+    private void shareDictionaries() {
+        if (_values == null || size() == 0) {
+            return;
+        }
+        boolean shared = false;
+        for (Dictionary dict : _dictionaries) {
+            if (dict != null && dict.shared() != _values
+                && 2 * dict.size() <= size()) {
+                dict.share(_values);
+                shared = true;
+            }
+        }
+        if (shared) {
+            for (Row row : _rows) {
+                row.intern(_dictionaries);
+            }
+        }
+    }
+
+    /** Create an index on the column titled TITLE, unless there already
+     *  is one, so that selections comparing that column with literals
+     *  need not scan every row. */
+    void createIndex(String title) {
+        int k = findColumn(title);
+        if (k == -1) {
+            throw error("unknown column: %s", title);
+        }
+        if (_indexes[k] == null) {
+            Index index = new Index(k, _columnTypes[k]);
+            for (Row row : _rows) {
+                index.add(row);
+            }
+            _indexes[k] = index;
+        }
+    }
+
+    /** Return true iff my Kth column is indexed. */
+    boolean hasIndex(int k) {
+        return _indexes[k] != null;
+    }
+
+    /** Return my serial number, which no other table shares. */
+    long serial() {
+        return _serial;
+    }
+
+    /** Return my version, which increases whenever a row is added to
+     *  me. */
+    long version() {
+        return _version;
+    }
+
+    /** Return the lock that a thread holds exclusively while it changes
+     *  my rows, indexes or log. */
+    Lock writeLock() {
+        return _lock.writeLock();
+    }
+
+    /** Return the locks that a thread holds, shared, while it reads the
+     *  rows of TABLES, in the order in which they must be acquired. */
+    static List<Lock> readLocks(Table... tables) {
+        return locks(Collections.emptySet(), Arrays.asList(tables));
+    }
+
+    /** Acquire and return the locks that a thread holds while it adds
+     *  rows to me: exclusive locks on me and on the tables of the views
+     *  that adding rows to me changes, and shared locks on the other
+     *  tables that those views read.  Since views may be created or
+     *  dropped until they are held, the locks are computed again once
+     *  held, and acquired again if they have changed. */
+    List<Lock> lockForAdding() {
+        while (true) {
+            List<Lock> locks = lock(writeLocks());
+            if (locks.equals(writeLocks())) {
+                return locks;
+            }
+            unlock(locks);
+        }
+    }
+
+    /** Return the locks that lockForAdding acquires, in the order in
+     *  which they must be acquired. */
+    private List<Lock> writeLocks() {
+        LinkedHashSet<Table> written = new LinkedHashSet<>();
+        LinkedHashSet<Table> read = new LinkedHashSet<>();
+        dependents(written, read);
+        return locks(written, read);
+    }
+
+    /** Add to WRITTEN me and the tables of the views that adding rows to
+     *  me changes, and to READ the tables that those views read. */
+    void dependents(Set<Table> written, Set<Table> read) {
+        written.add(this);
+        for (View view : _views) {
+            view.dependents(written, read);
+        }
+    }
+
+    /** Return exclusive locks on WRITTEN and shared locks on the other
+     *  tables in READ, in the order in which they must be acquired.  They
+     *  are ordered by the creation of their tables, so that threads that
+     *  lock several tables at once cannot deadlock. */
+    static List<Lock> locks(Collection<Table> written,
+                            Collection<Table> read) {
+        TreeMap<Long, Table> tables = new TreeMap<>();
+        for (Table table : read) {
+            tables.put(table._serial, table);
+        }
+        for (Table table : written) {
+            tables.put(table._serial, table);
+        }
+        ArrayList<Lock> locks = new ArrayList<>();
+        for (Table table : tables.values()) {
+            locks.add(written.contains(table) ? table._lock.writeLock()
+                      : table._lock.readLock());
+        }
+        return locks;
+    }
+
+    /** Acquire LOCKS, in order, and return them. */
+    static List<Lock> lock(List<Lock> locks) {
+        for (Lock lock : locks) {
+            lock.lock();
+        }
+        return locks;
+    }
+
+    /** Release LOCKS, which were acquired by lock. */
+    static void unlock(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i -= 1) {
+            locks.get(i).unlock();
+        }
+    }
+
+    /** Return the view whose rows I hold, or null if I am not a
+     *  view. */
+    View view() {
+        return _view;
+    }
+
+    /** Record that I hold the rows of VIEW. */
+    void setView(View view) {
+        _view = view;
+    }
+
+    /** Bring VIEW up to date whenever rows are added to me.  Must be
+     *  called while holding my exclusive lock. */
+    void addView(View view) {
+        _views.add(view);
+    }
+
+    /** Stop bringing VIEW up to date.  Must be called while holding my
+     *  exclusive lock. */
+    void removeView(View view) {
+        _views.remove(view);
     }
 
-    /** Read the contents of the file NAME.db, and return as a Table.
-     *  Format errors in the .db file cause a DBException. */
+    /** Return my rows in increasing order of their values in my Kth
+     *  column, which must be indexed. */
+    Iterable<Row> sorted(int k) {
+        return _indexes[k].rows();
+    }
+
+    /** Return the rows of THIS that may satisfy CONDITIONS when they are
+     *  the TABLEth of the rows passed to Condition.test.  Uses the index
+     *  that yields the fewest candidate rows, if any index applies, and
+     *  otherwise returns all my rows. */
+    Collection<Row> candidates(List<Condition> conditions, int table) {
+        Collection<Row> result = _rows;
+        int fewest = size();
+        for (Index index : _indexes) {
+            if (index != null) {
+                List<Row> rows = index.lookup(conditions, table);
+                if (rows != null && rows.size() < fewest) {
+                    result = rows;
+                    fewest = rows.size();
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Add to THIS the rows of the text file FILE, which is in the
+     *  format of a .db file, and whose header must name my columns in
+     *  order.  The whole file is read and checked before any row is
+     *  added, so that no rows are added if any of them is bad.  Return
+     *  the number of rows added. */
+    int copyFrom(String file) {
+        FileChannel input = null;
+        try {
+            input = FileChannel.open(Paths.get(file));
+            TableReader reader = new TableReader(file, input, 0, input.size());
+            String[] columnNames = reader.readLine();
+            if (columnNames == null) {
+                throw error("missing header in %s", file);
+            }
+            parseHeader(columnNames);
+            if (!Arrays.equals(columnNames, _columnTitles)) {
+                throw error("columns of %s do not match table", file);
+            }
+            List<Row> rows =
+                TableReader.readRows(file, input, reader.position(),
+                                     input.size(), columns());
+            for (Row row : rows) {
+                check(row);
+            }
+            return addAll(rows);
+        } catch (NoSuchFileException e) {
+            throw error("could not find %s", file);
+        } catch (IOException e) {
+            throw error("problem reading from %s", file);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    /* Ignore IOException */
+                }
+            }
+        }
+    }
+
+    /** Remove the types from the titles in the header COLUMNNAMES of a
+     *  text file, in which TITLE:TYPE denotes a column TITLE of type
+     *  TYPE, and return the types of the columns. */
+    private static Type[] parseHeader(String[] columnNames) {
+        Type[] columnTypes = new Type[columnNames.length];
+        for (int i = 0; i < columnNames.length; i += 1) {
+            String[] title = columnNames[i].split(":", 2);
+            columnNames[i] = title[0];
+            columnTypes[i] =
+                title.length == 1 ? Type.STRING : Type.parse(title[1]);
+        }
+        return columnTypes;
+    }
+
+    /** Read the contents of the file NAME.db, which may be text or
+     *  binary, and return as a Table.  In a text file, a column title
+     *  TITLE:TYPE denotes a column TITLE of type TYPE.  Format errors in
+     *  the .db file cause a DBException. */
     static Table readTable(String name) {
-        BufferedReader input;
+        return readTable(name, null);
+    }
+
+    /** Read the contents of the file NAME.db, as for readTable(NAME),
+     *  interning its values in VALUES, if it is not null. */
+    static Table readTable(String name, ValueDictionary values) {
+        FileChannel input;
         Table table;
         input = null;
-        table = null;
         try {
-            input = new BufferedReader(new FileReader(name + ".db"));
-            String header = input.readLine();
-            if (header == null) {
-                throw error("missing header in DB file");
+            input = FileChannel.open(Paths.get(name + ".db"));
+            if (BinaryFormat.detect(input)) {
+                return BinaryFormat.read(name, input, values);
             }
-            String[] columnNames = header.split(",");
-            table = new Table(columnNames);
-            String line = input.readLine();
-            while (line != null) {
-                Row r = new Row(line.split(","));
-                table.add(r);
-                line = input.readLine();
+            TableReader reader =
+                new TableReader(name + ".db", input, 0, input.size());
+            String[] columnNames = reader.readLine();
+            if (columnNames == null) {
+                throw error("missing header in DB file");
             }
-        } catch (FileNotFoundException e) {
+            table = new Table(columnNames, parseHeader(columnNames));
+            table.addAll(TableReader.readRows(name + ".db", input,
+                                              reader.position(),
+                                              input.size(),
+                                              table.columns()));
+            table.share(values);
+        } catch (NoSuchFileException e) {
             throw error("could not find %s.db", name);
         } catch (IOException e) {
             throw error("problem reading from %s.db", name);
@@ -113,77 +535,140 @@ class Table implements Iterable<Row> {
         return table;
     }
 
-    /** Write the contents of TABLE into the file NAME.db. Any I/O errors
-     *  cause a DBException. */
+    /** Write the contents of TABLE into the file NAME.db, replacing it
+     *  atomically. Any I/O errors cause a DBException. */
     void writeTable(String name) {
-        PrintStream output;
-        output = null;
+        writeTable(name, true);
+    }
+
+    /** Write the contents of TABLE into the file NAME.db a row at a time
+     *  through a buffer of bounded size.  The titles of columns whose type
+     *  is not STRING are followed by a colon and the type.  If ATOMIC, the
+     *  contents are first written and synced to NAME.db.tmp, which then
+     *  replaces NAME.db, so that a failure never leaves NAME.db partly
+     *  written.  Any I/O errors cause a DBException. */
+    void writeTable(String name, boolean atomic) {
+        save(name, atomic, false);
+    }
+
+    /** Write the contents of TABLE into the file NAME.db in the binary
+     *  format of BinaryFormat, replacing it atomically.  Any I/O errors
+     *  cause a DBException. */
+    void writeBinaryTable(String name) {
+        save(name, true, true);
+    }
+
+    /** Write my contents into NAME.db, in binary if BINARY and otherwise
+     *  as text, replacing the file atomically if ATOMIC. */
+    private void save(String name, boolean atomic, boolean binary) {
+        Path target = Paths.get(name + ".db");
+        Path file = atomic ? Paths.get(name + ".db.tmp") : target;
+        FileOutputStream stream;
+        stream = null;
         try {
-            String sep;
-            sep = "";
-            output = new PrintStream(name + ".db");
-            for (int i = 0; i < columns(); i += 1) {
-                sep += getTitle(i);
-                if (i < columns() - 1) {
-                    sep += ",";
-                }
+            stream = new FileOutputStream(file.toFile());
+            if (binary) {
+                BinaryFormat.write(this, stream);
+            } else {
+                writeText(stream);
             }
-            for (Row row : this) {
-                sep += "\n";
-                for (int i = 0; i < row.size(); i += 1) {
-                    sep += row.get(i);
-                    if (i < row.size() - 1) {
-                        sep += ",";
-                    }
-                }
+            if (atomic) {
+                stream.getFD().sync();
+            }
+            stream.close();
+            stream = null;
+            if (atomic) {
+                replace(file, target);
             }
-            output.append(sep);
         } catch (IOException e) {
             throw error("trouble writing to %s.db", name);
         } finally {
-            if (output != null) {
-                output.close();
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    /* Ignore IOException */
+                }
+            }
+            if (atomic) {
+                file.toFile().delete();
             }
         }
     }
 
-    /** Print my contents on the standard output. */
-    void print() {
-        for (Row row : _rows) {
-            String s = " ";
+    /** Write my contents as comma-separated text to STREAM. */
+    private void writeText(OutputStream stream) throws IOException {
+        Writer output =
+            new BufferedWriter(new OutputStreamWriter(stream, UTF_8),
+                               WRITE_BUFFER);
+        for (int i = 0; i < columns(); i += 1) {
+            if (i > 0) {
+                output.write(',');
+            }
+            output.write(getTitle(i));
+            if (getType(i) != Type.STRING) {
+                output.write(':');
+                output.write(getType(i).toString());
+            }
+        }
+        output.write('\n');
+        for (Row row : this) {
             for (int i = 0; i < row.size(); i += 1) {
-                s += " " + row.get(i);
+                if (i > 0) {
+                    output.write(',');
+                }
+                output.write(row.get(i));
             }
-            System.out.println(s);
+            output.write('\n');
         }
+        output.flush();
     }
 
-    /** Return a new Table whose columns are COLUMNNAMES, selected from
-     *  rows of this table that satisfy CONDITIONS. */
-    Table select(List<String> columnNames, List<Condition> conditions) {
-        Table result = new Table(columnNames);
-        ArrayList<Column> lst = new ArrayList<Column>();
-        for (String colN : columnNames) {
-            lst.add(new Column(colN, this));
-        }
-        for (Row row : this) {
-            if (helper(conditions, row)) {
-                result.add(new Row(lst, row));
-            }
+    /** Rename FILE to TARGET, replacing TARGET, atomically if the file
+     *  system allows. */
+    private static void replace(Path file, Path target) throws IOException {
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
         }
-        return result;
     }
 
-    /** Helper method that checks if the ROWS satisfies the CONDITIONS.
-     *  return true if the row satisfies the conditions */
-    boolean helper(List<Condition> conditions, Row... rows) {
-        for (Condition con : conditions) {
-            if (con.test(rows)) {
-                continue;
+    /** Print my contents on the standard output. */
+    void print() {
+        print(iterator());
+    }
+
+    /** Print my rows on OUTPUT, one per line. */
+    void print(PrintStream output) {
+        print(iterator(), output);
+    }
+
+    /** Print ROWS on the standard output, one per line. */
+    static void print(Iterator<Row> rows) {
+        print(rows, System.out);
+    }
+
+    /** Print ROWS on OUTPUT, one per line. */
+    static void print(Iterator<Row> rows, PrintStream output) {
+        StringBuilder line = new StringBuilder();
+        while (rows.hasNext()) {
+            Row row = rows.next();
+            line.setLength(0);
+            line.append(' ');
+            for (int i = 0; i < row.size(); i += 1) {
+                line.append(' ').append(row.get(i));
             }
-            return false;
+            output.println(line);
         }
-        return true;
+    }
+
+    /** Return a new Table whose columns are COLUMNNAMES, selected from
+     *  rows of this table that satisfy CONDITIONS. */
+    Table select(List<String> columnNames, List<Condition> conditions) {
+        return new Query(new Table[] { this }, columnNames,
+                         conditions).toTable();
     }
 
     /** Return a new Table whose columns are COLUMNNAMES, selected
@@ -191,54 +676,8 @@ class Table implements Iterable<Row> {
      *  on all columns with identical names and satisfy CONDITIONS. */
     Table select(Table table2, List<String> columnNames,
                  List<Condition> conditions) {
-        Table result = new Table(columnNames);
-        ArrayList<Column> lst = new ArrayList<Column>();
-        for (String colN : columnNames) {
-            lst.add(new Column(colN, this, table2));
-        }
-        ArrayList<Column> common1 = new ArrayList<Column>();
-        ArrayList<Column> common2 = new ArrayList<Column>();
-        for (int i = 0; i < columns(); i += 1) {
-            String col1 = getTitle(i);
-            for (int j = 0; j < table2.columns(); j += 1) {
-                String col2 = table2.getTitle(j);
-                if (col1.equals(col2)) {
-                    common1.add(new Column(col1, this));
-                    common2.add(new Column(col2, table2));
-                }
-            }
-        }
-        for (Row row1 : this) {
-            for (Row row2 : table2) {
-                if (!helper(conditions, row1, row2)) {
-                    continue;
-                }
-                if (!equijoin(common1, common2, row1, row2)) {
-                    continue;
-                }
-                result.add(new Row(lst, row1, row2));
-            }
-        }
-        return result;
-    }
-
-    /** Return true if the columns COMMON1 from ROW1 and COMMON2 from
-     *  ROW2 all have identical values.  Assumes that COMMON1 and
-     *  COMMON2 have the same number of elements and the same names,
-     *  that the columns in COMMON1 apply to this table, those in
-     *  COMMON2 to another, and that ROW1 and ROW2 come, respectively,
-     *  from those tables. */
-    private static boolean equijoin(List<Column> common1, List<Column> common2,
-                                    Row row1, Row row2) {
-        for (int i = 0; i < common1.size(); i += 1) {
-            Column col1 = common1.get(i);
-            Column col2 = common2.get(i);
-            if (col1.getFrom(row1).equals(col2.getFrom(row2))) {
-                continue;
-            }
-            return false;
-        }
-        return true;
+        return new Query(new Table[] { this, table2 }, columnNames,
+                         conditions).toTable();
     }
 
     /** My rows. */
@@ -246,5 +685,32 @@ class Table implements Iterable<Row> {
 
     /** My columnTitles. */
     private String[] _columnTitles;
+    /** The types of my columns. */
+    private Type[] _columnTypes;
+    /** True iff some column has a type other than STRING. */
+    private boolean _typed;
+    /** The index on each of my columns, or null for unindexed
+     *  columns. */
+    private Index[] _indexes;
+    /** The dictionary in which the values of each of my columns are
+     *  interned, or null for a column whose values are mostly
+     *  distinct. */
+    private Dictionary[] _dictionaries;
+    /** The log of rows added to me, or null. */
+    private WriteAheadLog.Log _log;
+    /** The views that read me.  They change only while my exclusive
+     *  lock is held, but are also read without it, by writeLocks. */
+    private CopyOnWriteArrayList<View> _views =
+        new CopyOnWriteArrayList<>();
+    /** The view whose rows I hold, or null. */
+    private View _view;
+    /** The values I share with other tables, or null. */
+    private ValueDictionary _values;
+    /** Guards my rows against changes while they are read. */
+    private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+    /** My position in order of creation among all tables. */
+    private final long _serial = SERIALS.getAndIncrement();
+    /** Number of rows added to me. */
+    private long _version;
 }
 
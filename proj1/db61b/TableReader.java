@@ -0,0 +1,373 @@
+package db61b;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static db61b.Utils.*;
+
+/** Reads the lines of a .db file, or of a range of one, through
+ *  memory-mapped windows of the file.  Lines are split into fields by
+ *  scanning for commas by hand rather than with regular expressions, and
+ *  repeated ASCII field values are decoded only once.  After the header
+ *  has been read with readLine, a TableReader iterates over the remaining
+ *  lines as Rows.
+ *  @author Bo Liu
+ */
+class TableReader implements Iterator<Row> {
+
+    /** Size of the portion of the file mapped at one time. */
+    static final int WINDOW = 1 << 26;
+    /** Number of entries in the cache of decoded values for each column. */
+    private static final int CACHE_SIZE = 1 << 10;
+    /** Number of bytes read at a time when looking for a line start. */
+    private static final int SCAN_SIZE = 1 << 12;
+    /** Files with at least this many bytes of rows are parsed in
+     *  parallel.  Set with the property db61b.parallelLoadBytes. */
+    static final int PARALLEL_LOAD_BYTES =
+        Integer.getInteger("db61b.parallelLoadBytes", 1 << 24);
+    /** Minimum number of bytes of rows parsed by one parallel task. */
+    private static final int MIN_CHUNK = 1 << 22;
+    /** Number of parallel tasks per worker thread, to even out the work
+     *  when some ranges parse faster than others. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** A reader for the lines that start at positions in [START, END) of
+     *  CHANNEL, which holds the contents of the file named FILE.  START
+     *  must be the start of a line. */
+    TableReader(String file, FileChannel channel, long start, long end) {
+        _file = file;
+        _channel = channel;
+        _base = start;
+        _end = end;
+        _columns = -1;
+        _cache = new String[0][];
+    }
+
+    /** Return the rows of the file named FILE, which are the lines at
+     *  positions [START, END) of CHANNEL and must each have COLUMNS
+     *  fields, in the order they appear.  Large ranges are split into
+     *  pieces that begin at line starts and are parsed in parallel into
+     *  separate lists of rows, which are then joined in order.  No rows
+     *  are returned if any line is malformed. */
+    static List<Row> readRows(String file, FileChannel channel,
+                              long start, long end, int columns)
+        throws IOException {
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        if (end - start < PARALLEL_LOAD_BYTES || threads < 2) {
+            TableReader reader = new TableReader(file, channel, start, end);
+            reader.setColumns(columns);
+            ArrayList<Row> rows = new ArrayList<>();
+            while (reader.hasNext()) {
+                rows.add(reader.next());
+            }
+            return rows;
+        }
+        long chunk = Math.max(MIN_CHUNK,
+                              (end - start) / (CHUNKS_PER_THREAD * threads));
+        return readRows(file, channel, start, end, columns, chunk);
+    }
+
+    /** Return the rows of the file named FILE, which are the lines at
+     *  positions [START, END) of CHANNEL and must each have COLUMNS
+     *  fields, in the order they appear, parsing them in parallel in
+     *  pieces of about CHUNK bytes that begin at line starts.  No rows are
+     *  returned if any line is malformed. */
+    static List<Row> readRows(String file, FileChannel channel,
+                              long start, long end, int columns, long chunk)
+        throws IOException {
+        ArrayList<Callable<List<Row>>> tasks = new ArrayList<>();
+        for (long pos = start; pos < end; ) {
+            long next = lineStart(channel, Math.min(pos + chunk, end), end);
+            tasks.add(new Chunk(file, channel, pos, next, columns));
+            pos = next;
+        }
+        List<Future<List<Row>>> results =
+            ForkJoinPool.commonPool().invokeAll(tasks);
+        try {
+            ArrayList<Row> rows = new ArrayList<>();
+            for (int i = 0; i < results.size(); i += 1) {
+                rows.addAll(results.get(i).get());
+                results.set(i, null);
+            }
+            return rows;
+        } catch (InterruptedException e) {
+            throw error("interrupted while reading %s", file);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DBException) {
+                throw (DBException) e.getCause();
+            }
+            throw error("problem reading from %s", file);
+        }
+    }
+
+    /** Return the position of the first line in CHANNEL that starts at
+     *  or after POS, or END if there is none before END. */
+    static long lineStart(FileChannel channel, long pos, long end)
+        throws IOException {
+        if (pos >= end) {
+            return end;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        pos -= 1;
+        while (pos < end) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n <= 0) {
+                return end;
+            }
+            for (int i = 0; i < n; i += 1) {
+                if (buffer.get(i) == '\n') {
+                    return Math.min(pos + i + 1, end);
+                }
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    /** Return the position in the file of the next line to be read. */
+    long position() {
+        return _buffer == null ? _base : _base + _pos;
+    }
+
+    /** Require each subsequent line to have COLUMNS fields. */
+    void setColumns(int columns) {
+        _columns = columns;
+    }
+
+    /** Return the fields of the next line, or null if there are no more
+     *  lines.  Every comma separates two fields, so a line ending in a
+     *  comma ends with an empty field, and a blank line has one empty
+     *  field.  (Unlike String.split, which the original reader used,
+     *  this keeps trailing empty fields, so that the empty values that
+     *  writeTable writes at the ends of lines are read back.)  A blank
+     *  line at the end of the file, as editors may leave, is ignored
+     *  when lines must have more than one field, since it cannot then be
+     *  a row. */
+    String[] readLine() {
+        try {
+            if (!nextLine()) {
+                return null;
+            }
+            if (_lineStart == _lineEnd && _columns > 1
+                && position() == _channel.size()) {
+                return null;
+            }
+            return split();
+        } catch (IOException e) {
+            throw error("problem reading from %s", _file);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (_next == null) {
+            String[] fields = readLine();
+            if (fields != null) {
+                _next = new Row(fields);
+            }
+        }
+        return _next != null;
+    }
+
+    @Override
+    public Row next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Row result = _next;
+        _next = null;
+        return result;
+    }
+
+    /** Set _lineStart and _lineEnd to the bounds within _buffer of the
+     *  next line, excluding its terminator, mapping a new window of the
+     *  file if needed.  A line longer than WINDOW is mapped in a window
+     *  doubled as often as needed, up to the largest that can be mapped.
+     *  Return false if there are no more lines. */
+    private boolean nextLine() throws IOException {
+        int window = WINDOW;
+        while (true) {
+            if (_buffer == null || _pos == _buffer.limit()) {
+                if (_buffer != null) {
+                    _base += _pos;
+                }
+                if (_base >= _end) {
+                    return false;
+                }
+                map(window);
+            }
+            int limit = _buffer.limit();
+            int i;
+            for (i = _pos; i < limit && _buffer.get(i) != '\n'; i += 1) {
+                continue;
+            }
+            if (i < limit || _base + limit >= _end) {
+                _lineStart = _pos;
+                _lineEnd = i;
+                _pos = Math.min(i + 1, limit);
+                if (_lineEnd > _lineStart
+                    && _buffer.get(_lineEnd - 1) == '\r') {
+                    _lineEnd -= 1;
+                }
+                return true;
+            }
+            if (_pos == 0) {
+                if (window == Integer.MAX_VALUE) {
+                    throw error("line too long in %s", _file);
+                }
+                window = (int) Math.min(2L * window, Integer.MAX_VALUE);
+            }
+            _base += _pos;
+            map(window);
+        }
+    }
+
+    /** Map up to WINDOW bytes of the file starting at _base. */
+    private void map(int window) throws IOException {
+        long size = Math.min(window, _end - _base);
+        _buffer = _channel.map(FileChannel.MapMode.READ_ONLY, _base, size);
+        _pos = 0;
+    }
+
+    /** Return the fields of the current line. */
+    private String[] split() {
+        int n = 1;
+        for (int i = _lineStart; i < _lineEnd; i += 1) {
+            if (_buffer.get(i) == ',') {
+                n += 1;
+            }
+        }
+        if (_columns != -1 && n != _columns) {
+            throw error("wrong number of columns in %s", _file);
+        }
+        String[] fields = new String[n];
+        int start = _lineStart;
+        for (int k = 0; k < n; k += 1) {
+            int end = start;
+            while (end < _lineEnd && _buffer.get(end) != ',') {
+                end += 1;
+            }
+            fields[k] = field(k, start, end);
+            start = end + 1;
+        }
+        return fields;
+    }
+
+    /** Return the value of field number K, which occupies positions
+     *  [START, END) of _buffer.  Reuses the String last decoded for the
+     *  same column with the same hash, if it has the same contents. */
+    private String field(int k, int start, int end) {
+        int h = 0;
+        boolean ascii = true;
+        for (int i = start; i < end; i += 1) {
+            byte b = _buffer.get(i);
+            ascii &= b >= 0;
+            h = 31 * h + b;
+        }
+        if (!ascii) {
+            return decode(start, end);
+        }
+        if (k >= _cache.length) {
+            String[][] cache = new String[k + 1][];
+            System.arraycopy(_cache, 0, cache, 0, _cache.length);
+            _cache = cache;
+        }
+        if (_cache[k] == null) {
+            _cache[k] = new String[CACHE_SIZE];
+        }
+        int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+        String old = _cache[k][slot];
+        if (old != null && old.hashCode() == h && matches(old, start, end)) {
+            return old;
+        }
+        String value = decode(start, end);
+        _cache[k][slot] = value;
+        return value;
+    }
+
+    /** Return true iff the ASCII characters at positions [START, END) of
+     *  _buffer spell VALUE. */
+    private boolean matches(String value, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i += 1) {
+            if (value.charAt(i - start) != _buffer.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the UTF-8 text at positions [START, END) of _buffer. */
+    private String decode(int start, int end) {
+        if (_scratch.length < end - start) {
+            _scratch = new byte[2 * (end - start)];
+        }
+        for (int i = start; i < end; i += 1) {
+            _scratch[i - start] = _buffer.get(i);
+        }
+        return new String(_scratch, 0, end - start, StandardCharsets.UTF_8);
+    }
+
+    /** A task that parses the rows in one range of a file. */
+    private static class Chunk implements Callable<List<Row>> {
+        /** A task that returns the rows at positions [START, END) of
+         *  CHANNEL, which holds the file FILE, each of which must have
+         *  COLUMNS fields. */
+        Chunk(String file, FileChannel channel, long start, long end,
+              int columns) {
+            _reader = new TableReader(file, channel, start, end);
+            _reader.setColumns(columns);
+        }
+
+        @Override
+        public List<Row> call() {
+            ArrayList<Row> rows = new ArrayList<>();
+            while (_reader.hasNext()) {
+                rows.add(_reader.next());
+            }
+            return rows;
+        }
+
+        /** Reader for my range. */
+        private TableReader _reader;
+    }
+
+    /** Name of the file being read. */
+    private String _file;
+    /** The file being read. */
+    private FileChannel _channel;
+    /** The currently mapped window of the file, or null initially. */
+    private MappedByteBuffer _buffer;
+    /** File position of the start of _buffer. */
+    private long _base;
+    /** File position just past the last line to be read. */
+    private long _end;
+    /** Position in _buffer of the start of the next line. */
+    private int _pos;
+    /** Bounds in _buffer of the current line, excluding its
+     *  terminator. */
+    private int _lineStart, _lineEnd;
+    /** Required number of fields in each line, or -1 if unchecked. */
+    private int _columns;
+    /** For each column, the values most recently decoded, indexed by
+     *  hash. */
+    private String[][] _cache;
+    /** Holds the bytes of a field being decoded. */
+    private byte[] _scratch = new byte[CACHE_SIZE];
+    /** The next row to be returned, if already read. */
+    private Row _next;
+}
@@ -1,9 +1,23 @@
 package db61b;
 
 import static org.junit.Assert.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import org.junit.Test;
 import org.junit.Before;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 
 /** The major tests for the db61b project.
  *  @author Bo Liu
@@ -54,6 +68,703 @@ public class Test2 {
         temp.print();
     }
 
+    /** Tests the hash join on common columns, and the cross product
+     *  when there are none. */
+    @Test
+    public void testJoin() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("SID");
+        lst.add("CCN");
+        ArrayList<Condition> con = new ArrayList<Condition>();
+        con.add(new Condition(new Column("Major", t2), "=", "EECS"));
+        assertEquals(10, t2.select(t1, lst, con).size());
+        con.set(0, new Condition(new Column("Major", t1, t2), "=", "EECS"));
+        assertEquals(10, t1.select(t2, lst, con).size());
+        assertEquals(19, t1.select(t2, lst,
+                                   new ArrayList<Condition>()).size());
+
+        ArrayList<String> major = new ArrayList<String>();
+        major.add("Major");
+        ArrayList<String> grade = new ArrayList<String>();
+        grade.add("Grade");
+        Table majors = t2.select(major, new ArrayList<Condition>());
+        Table grades = t1.select(grade, new ArrayList<Condition>());
+        ArrayList<String> both = new ArrayList<String>();
+        both.add("Major");
+        both.add("Grade");
+        assertEquals(3 * 4, majors.select(grades, both,
+                                          new ArrayList<Condition>()).size());
+    }
+
+    /** Tests compiled predicates, including folded conditions. */
+    @Test
+    public void testPredicate() {
+        Column sid = new Column("SID", t1);
+        Row[] tuple = { t1.iterator().next() };
+        ArrayList<Condition> con = new ArrayList<Condition>();
+        con.add(new Condition(sid, "=", sid));
+        assertTrue(new Predicate(con).test(tuple));
+        con.add(new Condition(sid, "=", tuple[0].get(0)));
+        assertTrue(new Predicate(con).test(tuple));
+        con.add(new Condition(sid, ">=", "zzz"));
+        assertFalse(new Predicate(con).test(tuple));
+        con.clear();
+        con.add(new Condition(sid, "=", "101"));
+        con.add(new Condition(sid, "=", "102"));
+        assertFalse(new Predicate(con).test(tuple));
+        con.clear();
+        con.add(new Condition(sid, "<", sid));
+        assertFalse(new Predicate(con).test(tuple));
+    }
+
+    /** Tests joins of indexed tables by merging, and external sorts that
+     *  spill to temporary files. */
+    @Test
+    public void testMergeJoin() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("SID");
+        lst.add("CCN");
+        t1.createIndex("SID");
+        t2.createIndex("SID");
+        assertEquals(19, t1.select(t2, lst,
+                                   new ArrayList<Condition>()).size());
+
+        ArrayList<Column> key = new ArrayList<Column>();
+        key.add(new Column("SID", t1));
+        Type[] types = { Type.STRING };
+        ArrayList<Row[]> tuples = new ArrayList<Row[]>();
+        for (Row row : t1) {
+            tuples.add(new Row[] { row });
+        }
+        Iterator<Row[]> sorted =
+            new ExternalSort(new Pipeline.KeyOrder(key, types), 2)
+            .sort(tuples.iterator());
+        String last = "";
+        int n = 0;
+        while (sorted.hasNext()) {
+            String sid = sorted.next()[0].get(0);
+            assertTrue(last.compareTo(sid) <= 0);
+            last = sid;
+            n += 1;
+        }
+        assertEquals(t1.size(), n);
+    }
+
+    /** Tests that closing a sort that has spilled to temporary files
+     *  before it is read to the end removes the files. */
+    @Test
+    public void testSortClose() throws IOException {
+        ArrayList<Column> key = new ArrayList<Column>();
+        key.add(new Column("SID", t1));
+        Type[] types = { Type.STRING };
+        ArrayList<Row[]> tuples = new ArrayList<Row[]>();
+        for (Row row : t1) {
+            tuples.add(new Row[] { row });
+        }
+        Pipeline.Operator<Row[]> sorted =
+            new ExternalSort(new Pipeline.KeyOrder(key, types), 2)
+            .sort(tuples.iterator());
+        sorted.next();
+        assertTrue(ExternalSort.directory().list().length > 0);
+        sorted.close();
+        assertEquals(0, ExternalSort.directory().list().length);
+        assertFalse(sorted.hasNext());
+    }
+
+    /** Tests ordered and limited queries, including sorts that spill to
+     *  temporary files. */
+    @Test
+    public void testOrderBy() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("SID");
+        lst.add("Grade");
+        Query query = new Query(new Table[] { t1 }, lst,
+                                new ArrayList<Condition>());
+        query.orderBy("SID", true);
+        query.limit(3);
+        ArrayList<String> sids = new ArrayList<String>();
+        for (Row row : query) {
+            sids.add(row.get(0));
+        }
+        assertEquals(3, sids.size());
+        assertEquals("106", sids.get(0));
+        assertTrue(sids.get(1).compareTo(sids.get(2)) >= 0);
+
+        query.limit(0);
+        assertFalse(query.iterator().hasNext());
+
+        Pipeline.RowOrder order =
+            new Pipeline.RowOrder(new int[] { 2 }, new Type[] { Type.STRING },
+                                  new boolean[] { false });
+        Iterator<Row> sorted = new Pipeline.Sort(t1.iterator(), order, 2);
+        Row last = null;
+        int n = 0;
+        while (sorted.hasNext()) {
+            Row row = sorted.next();
+            assertTrue(last == null || order.compare(last, row) < 0);
+            last = row;
+            n += 1;
+        }
+        assertEquals(t1.size(), n);
+    }
+
+    /** Tests that projecting several parts of a table in parallel yields
+     *  the same distinct rows as projecting it sequentially. */
+    @Test
+    public void testParallelProject() {
+        ArrayList<Column> cols = new ArrayList<Column>();
+        cols.add(new Column("Grade", t1));
+        ArrayList<Iterator<Row[]>> parts = new ArrayList<Iterator<Row[]>>();
+        parts.add(new Pipeline.Scan(1, 0, t1));
+        parts.add(new Pipeline.Scan(1, 0, t1));
+        Iterator<Row> rows =
+            new Pipeline.Dedupe(new Pipeline.ParallelProject(parts, cols));
+        int n = 0;
+        while (rows.hasNext()) {
+            rows.next();
+            n += 1;
+        }
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("Grade");
+        assertEquals(t1.select(lst, new ArrayList<Condition>()).size(), n);
+        Table big = new Table(new String[] {"A", "B"});
+        for (int i = 0; i < 3 * Pipeline.ParallelProject.BATCH; i += 1) {
+            big.add(new Row(new String[] {"" + i, "" + i % 7}));
+        }
+        cols.set(0, new Column("B", big));
+        parts.clear();
+        parts.add(new Pipeline.Scan(1, 0, big));
+        parts.add(new Pipeline.Scan(1, 0, big));
+        rows = new Pipeline.ParallelProject(parts, cols);
+        n = 0;
+        while (rows.hasNext()) {
+            rows.next();
+            n += 1;
+        }
+        assertEquals(2 * big.size(), n);
+    }
+
+    /** Tests that rows logged by a write-ahead log are replayed, and
+     *  that clearing the log discards them. */
+    @Test
+    public void testWriteAheadLog() throws IOException {
+        String name = tempName(".log");
+        WriteAheadLog wal = new WriteAheadLog();
+        Table t = new Table(new String[] {"SID", "CCN", "Grade"});
+        t.setLog(wal.open(name));
+        for (Row row : t1) {
+            t.add(row);
+        }
+        wal.commit(true);
+        Table replayed = new Table(new String[] {"SID", "CCN", "Grade"});
+        WriteAheadLog.replay(name, replayed);
+        assertEquals(t1.size(), replayed.size());
+        wal.open(name).clear();
+        replayed = new Table(new String[] {"SID", "CCN", "Grade"});
+        WriteAheadLog.replay(name, replayed);
+        assertEquals(0, replayed.size());
+        wal.close();
+    }
+
+    /** Tests that a row that was only partly written to a log is cut
+     *  from it when the log is replayed, so that it does not run into
+     *  the next row appended. */
+    @Test
+    public void testTornLog() throws IOException {
+        String name = tempName(".log");
+        File file = new File(name + ".log");
+        Files.write(file.toPath(), "3,4\n5".getBytes(UTF_8));
+        Table t = new Table(new String[] {"A", "B"});
+        WriteAheadLog.replay(name, t);
+        assertEquals(1, t.size());
+        WriteAheadLog wal = new WriteAheadLog();
+        t.setLog(wal.open(name));
+        t.add(new Row(new String[] {"7", "8"}));
+        wal.close();
+        Table replayed = new Table(new String[] {"A", "B"});
+        WriteAheadLog.replay(name, replayed);
+        assertEquals(2, replayed.size());
+        HashSet<Row> rows = new HashSet<Row>();
+        for (Row row : replayed) {
+            rows.add(row);
+        }
+        assertTrue(rows.contains(new Row(new String[] {"7", "8"})));
+    }
+
+    /** Tests adding rows in bulk, from a list and from a file. */
+    @Test
+    public void testBulkAdd() {
+        Table t = new Table(new String[] {"SID", "CCN", "Grade"});
+        ArrayList<Row> rows = new ArrayList<Row>();
+        for (Row row : t1) {
+            rows.add(row);
+            rows.add(row);
+        }
+        assertEquals(t1.size(), t.addAll(rows));
+        assertEquals(0, t.addAll(rows));
+        t = new Table(new String[] {"SID", "CCN", "Grade"});
+        assertEquals(t1.size(), t.copyFrom("test.db"));
+        assertEquals(t1.size(), t.size());
+    }
+
+    /** Tests that empty fields, including those at the ends of lines
+     *  and blank lines, are read as empty values, so that tables with
+     *  empty values survive being written and read back. */
+    @Test
+    public void testEmptyFields() throws IOException {
+        String name = tempName(".db");
+        File file = new File(name + ".db");
+        Files.write(file.toPath(), "A,B\n1,\n,2\n".getBytes(UTF_8));
+        Table t = Table.readTable(name);
+        assertEquals(2, t.size());
+        HashSet<Row> rows = new HashSet<Row>();
+        for (Row row : t) {
+            rows.add(row);
+        }
+        assertTrue(rows.contains(new Row(new String[] {"1", ""})));
+        assertTrue(rows.contains(new Row(new String[] {"", "2"})));
+        t.writeTable(name);
+        assertEquals(rows.size(), Table.readTable(name).size());
+
+        Table one = new Table(new String[] {"A"});
+        one.add(new Row(new String[] {"x"}));
+        one.add(new Row(new String[] {""}));
+        one.writeTable(name);
+        Table read = Table.readTable(name);
+        assertEquals(2, read.size());
+        boolean empty = false;
+        for (Row row : read) {
+            empty |= row.get(0).isEmpty();
+        }
+        assertTrue(empty);
+    }
+
+    /** Tests that a blank line at the end of a file is ignored when it
+     *  cannot be a row, but that one elsewhere is still an error. */
+    @Test
+    public void testTrailingBlankLine() throws IOException {
+        String name = tempName(".db");
+        File file = new File(name + ".db");
+        Files.write(file.toPath(), "a,b\n1,2\n\n".getBytes(UTF_8));
+        Table t = Table.readTable(name);
+        assertEquals(1, t.size());
+        assertFalse(t.add(new Row(new String[] {"1", "2"})));
+        Files.write(file.toPath(), "a,b\n1,2\n\n3,4\n".getBytes(UTF_8));
+        boolean failed = false;
+        try {
+            Table.readTable(name);
+        } catch (DBException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+
+    /** Tests that a copy adds no rows if any row of the file is bad. */
+    @Test
+    public void testCopyAllOrNothing() throws IOException {
+        String name = tempName(".db");
+        File file = new File(name + ".db");
+        Files.write(file.toPath(), "A,B\n1,2\n3,4\nx,5\n".getBytes(UTF_8));
+        Table t = new Table(new String[] {"A", "B"},
+                            new Type[] {Type.INT, Type.INT});
+        boolean failed = false;
+        try {
+            t.copyFrom(file.getPath());
+        } catch (DBException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+        assertEquals(0, t.size());
+        Files.write(file.toPath(), "A,B\n1,2\n3\n".getBytes(UTF_8));
+        failed = false;
+        try {
+            t.copyFrom(file.getPath());
+        } catch (DBException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+        assertEquals(0, t.size());
+    }
+
+    /** Tests that rows read in parallel in small pieces are those read
+     *  in sequence, in the same order and with the same duplicates, and
+     *  that a bad line in a later piece rejects them all. */
+    @Test
+    public void testParallelRead() throws IOException {
+        String name = tempName(".db");
+        File file = new File(name + ".db");
+        StringBuilder text = new StringBuilder("A,B\n");
+        for (int i = 0; i < 200; i += 1) {
+            text.append(i % 7).append(',').append(i % 3).append('\n');
+        }
+        Files.write(file.toPath(), text.toString().getBytes(UTF_8));
+        try (FileChannel input = FileChannel.open(file.toPath())) {
+            TableReader reader = new TableReader(name, input, 0, input.size());
+            reader.readLine();
+            long start = reader.position();
+            List<Row> sequential =
+                TableReader.readRows(name, input, start, input.size(), 2);
+            List<Row> parallel =
+                TableReader.readRows(name, input, start, input.size(), 2, 64);
+            assertEquals(200, sequential.size());
+            assertEquals(sequential, parallel);
+        }
+        text.append("1,2,3\n");
+        for (int i = 0; i < 10; i += 1) {
+            text.append("4,5\n");
+        }
+        Files.write(file.toPath(), text.toString().getBytes(UTF_8));
+        try (FileChannel input = FileChannel.open(file.toPath())) {
+            boolean failed = false;
+            try {
+                TableReader.readRows(name, input, "A,B\n".length(),
+                                     input.size(), 2, 64);
+            } catch (DBException e) {
+                failed = true;
+            }
+            assertTrue(failed);
+        }
+    }
+
+    /** Tests that binding the parameters of a query yields the same
+     *  rows as the query with literals in their place. */
+    @Test
+    public void testBind() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("SID");
+        ArrayList<Condition> con = new ArrayList<Condition>();
+        con.add(new Condition(new Column("Major", t2), "=", 0));
+        Query prepared = new Query(new Table[] { t2 }, lst, con);
+        ArrayList<String> values = new ArrayList<String>();
+        values.add("EECS");
+        ArrayList<Condition> literal = new ArrayList<Condition>();
+        literal.add(new Condition(new Column("Major", t2), "=", "EECS"));
+        assertEquals(new Query(new Table[] { t2 }, lst, literal)
+                     .toTable().size(),
+                     prepared.bind(values).toTable().size());
+        values.set(0, "Art");
+        assertEquals(0, prepared.bind(values).toTable().size());
+    }
+
+    /** Tests that tables sharing a ValueDictionary share equal values
+     *  of their columns that repeat, whether they share it when read or
+     *  later, and that the values of mostly distinct columns stay out of
+     *  it. */
+    @Test
+    public void testValueDictionary() {
+        ValueDictionary values = new ValueDictionary();
+        Table students = Table.readTable("test2", values);
+        Table again = Table.readTable("test2");
+        again.share(values);
+        Table enrolled = Table.readTable("test", values);
+        int matches = 0;
+        for (Row s : students) {
+            for (Row a : again) {
+                if (s.get(0).equals(a.get(0))) {
+                    assertSame(s.get(5), a.get(5));
+                    matches += 1;
+                }
+            }
+            String lastname = new String(s.get(1));
+            assertSame(lastname, values.lookup(lastname));
+        }
+        assertEquals(students.size(), matches);
+        for (Row e : enrolled) {
+            assertSame(e.get(0), values.lookup(new String(e.get(0))));
+        }
+        Table more = new Table(new String[] {"SID", "CCN", "Grade"});
+        more.share(values);
+        more.add(new Row(new String[] {"107", "99999", "A"}));
+        String fresh = new String("107");
+        assertSame(fresh, values.lookup(fresh));
+        assertSame("no such value", values.lookup("no such value"));
+    }
+
+    /** Tests the hash codes, equality and fingerprints of rows,
+     *  including rows changed by canonicalize. */
+    @Test
+    public void testRowHash() {
+        Row row = new Row(new String[] {"007", "x"});
+        Row same = new Row(new String[] {"7", "x"});
+        assertFalse(row.equals(same));
+        assertTrue(FingerprintSet.fingerprint(row)
+                   != FingerprintSet.fingerprint(same));
+        row.canonicalize(new Type[] {Type.INT, Type.STRING});
+        assertEquals(same, row);
+        assertEquals(same.hashCode(), row.hashCode());
+        assertEquals(FingerprintSet.fingerprint(same),
+                     FingerprintSet.fingerprint(row));
+        assertTrue(FingerprintSet.fingerprint(new Row(new String[] {"Aa"}))
+                   != FingerprintSet.fingerprint(
+                       new Row(new String[] {"BB"})));
+        assertTrue(FingerprintSet.fingerprint(
+                       new Row(new String[] {"ab", "c"}))
+                   != FingerprintSet.fingerprint(
+                       new Row(new String[] {"a", "bc"})));
+
+        ArrayList<Row> rows = new ArrayList<Row>();
+        for (Row r : t1) {
+            rows.add(r);
+            rows.add(new Row(new String[] {r.get(0), r.get(1), r.get(2)}));
+        }
+        for (boolean fingerprints : new boolean[] {false, true}) {
+            Iterator<Row> distinct =
+                new Pipeline.Dedupe(rows.iterator(), fingerprints);
+            int n = 0;
+            while (distinct.hasNext()) {
+                distinct.next();
+                n += 1;
+            }
+            assertEquals(t1.size(), n);
+        }
+    }
+
+    /** Tests that a ResultCache finds results only for unchanged tables,
+     *  and evicts the least recently used results to make room. */
+    @Test
+    public void testResultCache() {
+        ResultCache cache = new ResultCache(t1.size() + 2);
+        ArrayList<Row> rows = new ArrayList<Row>();
+        for (Row row : t1) {
+            rows.add(row);
+        }
+        String key = ResultCache.key("select * from t1", t1);
+        cache.put(key, rows);
+        assertEquals(rows, cache.get(key));
+        Table t = new Table(new String[] {"SID", "CCN", "Grade"});
+        assertNull(cache.get(ResultCache.key("select * from t1", t)));
+        String empty = ResultCache.key("select * from t", t);
+        cache.put(empty, new ArrayList<Row>());
+        assertNotNull(cache.get(empty));
+        t.add(rows.get(0));
+        assertNull(cache.get(ResultCache.key("select * from t", t)));
+        cache.put(ResultCache.key("select * from t", t), rows.subList(0, 1));
+        assertNull(cache.get(key));
+        assertNotNull(cache.get(empty));
+    }
+
+    /** Tests that a view of a join holds the same rows as its query
+     *  after rows are added to its tables, singly and in batches, and
+     *  that views may not group. */
+    @Test
+    public void testView() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("SID");
+        lst.add("CCN");
+        Table[] tables = new Table[] { t1, t2 };
+        ArrayList<Condition> con = new ArrayList<Condition>();
+        con.add(new Condition(new Column("Major", tables), "=", "EECS"));
+        Query query = new Query(tables, lst, con);
+        View view = new View(query);
+        assertEquals(query.toTable().size(), view.table().size());
+        t1.add(new Row(new String[] {"101", "99999", "A"}));
+        t2.add(new Row(new String[] {"110", "Ng", "Al", "F", "2005",
+                                     "EECS"}));
+        ArrayList<Row> rows = new ArrayList<Row>();
+        rows.add(new Row(new String[] {"110", "99999", "A"}));
+        rows.add(new Row(new String[] {"102", "99999", "A"}));
+        t1.addAll(rows);
+        Table expected = query.toTable();
+        assertEquals(expected.size(), view.table().size());
+        HashSet<Row> held = new HashSet<Row>();
+        for (Row row : view.table()) {
+            held.add(row);
+        }
+        for (Row row : expected) {
+            assertTrue(held.contains(row));
+        }
+        view.detach();
+        t1.add(new Row(new String[] {"110", "99998", "A"}));
+        assertEquals(expected.size(), view.table().size());
+        ArrayList<Aggregate> aggregates = new ArrayList<Aggregate>();
+        aggregates.add(null);
+        ArrayList<String> major = new ArrayList<String>();
+        major.add("Major");
+        boolean rejected = false;
+        try {
+            new View(new Query(new Table[] { t2 }, major, aggregates,
+                               major, new ArrayList<Condition>()));
+        } catch (DBException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+
+    /** Tests that explain prints a plan without running it, and that
+     *  explain analyze counts the rows produced by each operator. */
+    @Test
+    public void testExplain() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("SID");
+        lst.add("CCN");
+        Table[] tables = new Table[] { t1, t2 };
+        ArrayList<Condition> con = new ArrayList<Condition>();
+        con.add(new Condition(new Column("Major", tables), "=", "EECS"));
+        Query query = new Query(tables, lst, con);
+        ByteArrayOutputStream plan = new ByteArrayOutputStream();
+        query.explain(new PrintStream(plan), false);
+        String[] lines = plan.toString().split("\\R");
+        assertEquals("Dedupe", lines[0]);
+        assertEquals("  Project SID, CCN", lines[1]);
+        assertFalse(plan.toString().contains("rows="));
+        plan.reset();
+        query.explain(new PrintStream(plan), true);
+        lines = plan.toString().split("\\R");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("Dedupe  [rows="
+                                       + query.toTable().size() + " "));
+        int scanned = 0;
+        for (String line : lines) {
+            if (line.contains("Scan of")) {
+                scanned += 1;
+                assertTrue(line.contains("[rows=" + t1.size() + " ")
+                           || line.contains("[rows=" + t2.size() + " "));
+            }
+        }
+        assertEquals(1, scanned);
+    }
+
+    /** Tests that the sessions of a Server share its tables. */
+    @Test
+    public void testServer() throws IOException {
+        Server server = new Server(0);
+        new Thread(server::serve).start();
+        try {
+            assertEquals("", session(server, "create table t (A, B);\n"
+                                     + "insert into t values ('1', '2'),"
+                                     + " ('3', '4');\n"));
+            assertEquals("Search results:\n  3 4\n",
+                         session(server, "select A, B from t where A = '3';"
+                                 + "\n"));
+        } finally {
+            server.close();
+        }
+    }
+
+    /** Tests that a Server refuses clients beyond its limit while it
+     *  serves as many as it may. */
+    @Test
+    public void testServerLimit() throws IOException {
+        Server server = new Server(0, 1);
+        new Thread(server::serve).start();
+        Socket first = new Socket(InetAddress.getLoopbackAddress(),
+                                  server.port());
+        try {
+            first.getInputStream().read();
+            assertEquals("Error: too many sessions\n",
+                         session(server, "quit;\n"));
+        } finally {
+            first.close();
+            server.close();
+        }
+    }
+
+    /** Return the name of a new, empty temporary file without its
+     *  SUFFIX, such as ".db", as table and log files are named.  The file
+     *  is deleted when the tests end. */
+    private String tempName(String suffix) throws IOException {
+        File file = File.createTempFile("test", suffix);
+        file.deleteOnExit();
+        String name = file.getPath();
+        return name.substring(0, name.length() - suffix.length());
+    }
+
+    /** Return the output, without prompts, of the session of SERVER that
+     *  executes SCRIPT. */
+    private String session(Server server, String script) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                   server.port());
+        try {
+            socket.getOutputStream().write(script.getBytes("UTF-8"));
+            socket.shutdownOutput();
+            BufferedReader input =
+                new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "UTF-8"));
+            StringBuilder output = new StringBuilder();
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                line = line.replaceAll("^(> |\\.\\.\\.> )*", "");
+                if (!line.isEmpty()) {
+                    output.append(line).append('\n');
+                }
+            }
+            return output.toString();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /** Tests that a Query streams distinct rows without building a
+     *  table. */
+    @Test
+    public void testQuery() {
+        ArrayList<String> lst = new ArrayList<String>();
+        lst.add("Major");
+        Query query = new Query(new Table[] { t2 }, lst,
+                                new ArrayList<Condition>());
+        int n = 0;
+        for (Row row : query) {
+            n += 1;
+        }
+        assertEquals(3, n);
+        assertEquals(3, query.toTable().size());
+    }
+
+    /** Tests that a table written with writeTable reads back intact. */
+    @Test
+    public void testWriteTable() throws IOException {
+        String name = tempName(".db");
+        File file = new File(name + ".db");
+        t1.writeTable(name);
+        Table t = Table.readTable(name);
+        assertEquals(t1.size(), t.size());
+        assertEquals(t1.columns(), t.columns());
+        for (Row row : t1) {
+            assertFalse(t.add(row));
+        }
+        t2.writeTable(name, false);
+        assertEquals(t2.size(), Table.readTable(name).size());
+
+        long textLength = file.length();
+        t2.writeBinaryTable(name);
+        assertTrue(file.length() < 2 * textLength);
+        t = Table.readTable(name);
+        assertEquals(t2.size(), t.size());
+        assertEquals("Major", t.getTitle(5));
+        for (Row row : t2) {
+            assertFalse(t.add(row));
+        }
+    }
+
+    /** Tests that a table of every type, with empty and non-ASCII
+     *  values and a column with more distinct values than fit in a
+     *  one-byte code, reads back equal from its binary form. */
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        String name = tempName(".db");
+        Table t = new Table(new String[] {"Name", "N", "X"},
+                            new Type[] {Type.STRING, Type.INT,
+                                        Type.DOUBLE});
+        String[] names = {"", "caf\u00e9", "\u65e5\u672c",
+                          "\ud83d\ude00", "plain"};
+        for (int i = 0; i < 1000; i += 1) {
+            t.add(new Row(new String[] {names[i % names.length],
+                                        Integer.toString(i - 500),
+                                        Double.toString(i / 8.0)}));
+        }
+        t.writeBinaryTable(name);
+        Table read = Table.readTable(name);
+        assertEquals(t.columns(), read.columns());
+        for (int k = 0; k < t.columns(); k += 1) {
+            assertEquals(t.getTitle(k), read.getTitle(k));
+            assertEquals(t.getType(k), read.getType(k));
+        }
+        assertEquals(t.size(), read.size());
+        for (Row row : t) {
+            assertFalse(read.add(row));
+        }
+    }
+
     public static void main(String... args) {
         System.exit(ucb.junit.textui.runClasses(Test2.class));
     }
@@ -1,44 +1,70 @@
 package db61b;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import static db61b.Utils.*;
 
-/** Represents a stream of db61b tokens read from a given Scanner.
+/** Represents a stream of db61b tokens read from a given Reader or
+ *  Scanner.  The tokens are
+ *  <ul>
+ *  <li> literals: a quote followed by characters other than commas,
+ *       quotes, and ends of line, and then by a quote (which is reported
+ *       as missing if the literal ends otherwise);
+ *  <li> identifiers: a letter or underscore, followed by letters,
+ *       digits, and underscores;
+ *  <li> numerals: a sequence of digits;
+ *  <li> the relation symbols =, <=, >=, and !=;
+ *  <li> comments, from slash-star to the next star-slash, which are
+ *       discarded (an unterminated comment extends to the end of input);
+ *  <li> any other single non-whitespace character.
+ *  </ul>
+ *  Tokens are recognized by hand from a buffer of characters, rather than
+ *  with regular expressions.
  *  @author P. N. Hilfinger. */
 class Tokenizer {
 
-    /** Text of regular expressions that represent literals (possibly
-     *  unterminated), identifiers, and comments (possibly
-     *  unterminated). */
+    /** Text of regular expressions that represent identifiers and
+     *  numerals. */
     private static final String
-        LITERAL_TEXT = "'(?:[^,'\n\r]*)'?",
         IDENTIFIER_TEXT = "[\\p{Alpha}_]\\w*",
-        COMMENT_TEXT = "(?:/\\*.*?\\*/|/\\*.*)";
-    /** Matches potential tokens, including valid or unterminated
-     *  literals, valid or unterminated comments, identifiers,
-     *  relation symbols (=, <, <=, >=, and !=), end-of-line
-     *  sequences, or other single characters.  The pattern matches a
-     *  prefix of any string. */
-    private static final Pattern
-        TOKEN_PATN = mkPatn("(?s)[<>!]?=|%s|%s|%s|\r?\n|\\S",
-                            LITERAL_TEXT, IDENTIFIER_TEXT, COMMENT_TEXT);
+        NUMERAL_TEXT = "\\d+";
+    /** Initial size of the character buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
 
     /** Patterns matching specific kinds of token.  These are intended
      *  to be used with methods such as CommandInterpreter.name. */
     static final Pattern
         IDENTIFIER = mkPatn(IDENTIFIER_TEXT),
+        NUMERAL = mkPatn(NUMERAL_TEXT),
         LITERAL = mkPatn("'.*"),
         RELATION = mkPatn("[<>!]?=|[<>]");
 
     /** A Tokenizer that reads tokens from S, and prompts on PROMPTER,
-     *  if it is non-null. */
+     *  if it is non-null.  S is read a line at a time. */
     Tokenizer(Scanner s, PrintStream prompter) {
-        _input = s;
+        this(null, s, prompter);
+    }
+
+    /** A Tokenizer that reads tokens from R, and prompts on PROMPTER,
+     *  if it is non-null. */
+    Tokenizer(Reader r, PrintStream prompter) {
+        this(r, null, prompter);
+    }
+
+    /** A Tokenizer that reads tokens from whichever of R and S is
+     *  non-null, and prompts on PROMPTER, if it is non-null. */
+    private Tokenizer(Reader r, Scanner s, PrintStream prompter) {
+        _reader = r;
+        _lines = s;
+        _chars = new char[BUFFER_SIZE];
         _buffer = new ArrayList<>();
         _prompter = prompter;
         _continued = false;
@@ -54,7 +80,7 @@ class Tokenizer {
     private void readToken() {
         while (true) {
             prompt();
-            String token = _input.findWithinHorizon(TOKEN_PATN, 0);
+            String token = scan();
             if (token == null) {
                 token = "*EOF*";
             } else if (token.startsWith("'")) {
@@ -76,6 +102,162 @@ class Tokenizer {
         }
     }
 
+    /** Skip whitespace other than ends of line, and then read and return
+     *  the next potential token, which may be a comment (possibly
+     *  unterminated), an unterminated literal, or an end of line.
+     *  Returns null at the end of input. */
+    private String scan() {
+        int c;
+        while (true) {
+            c = charAt(0);
+            if (c == -1) {
+                return null;
+            } else if (c == '\n' || (c == '\r' && charAt(1) == '\n')
+                       || !isSpace(c)) {
+                break;
+            }
+            _pos += 1;
+        }
+        int n;
+        if (c == '\n') {
+            n = 1;
+        } else if (c == '\r') {
+            n = 2;
+        } else if (charAt(1) == '='
+                   && (c == '<' || c == '>' || c == '!')) {
+            n = 2;
+        } else if (c == '\'') {
+            for (n = 1; !endsLiteral(charAt(n)); n += 1) {
+                continue;
+            }
+            if (charAt(n) == '\'') {
+                n += 1;
+            }
+        } else if (isLetter(c) || c == '_') {
+            for (n = 1; isWordChar(charAt(n)); n += 1) {
+                continue;
+            }
+        } else if (isDigit(c)) {
+            for (n = 1; isDigit(charAt(n)); n += 1) {
+                continue;
+            }
+        } else if (c == '/' && charAt(1) == '*') {
+            for (n = 2; charAt(n) != -1; n += 1) {
+                if (charAt(n) == '*' && charAt(n + 1) == '/') {
+                    n += 2;
+                    break;
+                }
+            }
+        } else if (Character.isHighSurrogate((char) c)
+                   && charAt(1) != -1
+                   && Character.isLowSurrogate((char) charAt(1))) {
+            n = 2;
+        } else {
+            n = 1;
+        }
+        String token = new String(_chars, _pos, n);
+        _pos += n;
+        return token;
+    }
+
+    /** Return the character K positions past the next unread character,
+     *  reading more input as needed, or -1 if the input ends first. */
+    private int charAt(int k) {
+        while (_pos + k >= _limit) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return _chars[_pos + k];
+    }
+
+    /** Read more input into _chars, keeping its unread characters.
+     *  Return false if there is no more input. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        if (_pos > 0) {
+            System.arraycopy(_chars, _pos, _chars, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        }
+        if (_limit == _chars.length) {
+            _chars = Arrays.copyOf(_chars, 2 * _chars.length);
+        }
+        if (_lines != null) {
+            if (!_lines.hasNextLine()) {
+                _eof = true;
+                return false;
+            }
+            String line = _lines.nextLine() + "\n";
+            while (_limit + line.length() > _chars.length) {
+                _chars = Arrays.copyOf(_chars, 2 * _chars.length);
+            }
+            line.getChars(0, line.length(), _chars, _limit);
+            _limit += line.length();
+            return true;
+        }
+        try {
+            int n = _reader.read(_chars, _limit, _chars.length - _limit);
+            if (n == -1) {
+                _eof = true;
+                return false;
+            }
+            _limit += n;
+            return true;
+        } catch (IOException e) {
+            throw error("problem reading input");
+        }
+    }
+
+    /** Return true iff C, a character or -1, ends the text of a literal
+     *  begun by a quote. */
+    private static boolean endsLiteral(int c) {
+        return c == -1 || c == ',' || c == '\'' || c == '\n' || c == '\r';
+    }
+
+    /** Return true iff C is a whitespace character, as in regular
+     *  expressions. */
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000b'
+            || c == '\f' || c == '\r';
+    }
+
+    /** Return true iff C is an ASCII letter. */
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /** Return true iff C is an ASCII digit. */
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Return true iff C may continue an identifier. */
+    private static boolean isWordChar(int c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    /** Return true iff TOKEN matches P. */
+    private boolean matches(Pattern p, String token) {
+        if (p == LITERAL) {
+            return token.startsWith("'");
+        } else if (p == IDENTIFIER) {
+            if (token.isEmpty()
+                || !(isLetter(token.charAt(0)) || token.charAt(0) == '_')) {
+                return false;
+            }
+            for (int i = 1; i < token.length(); i += 1) {
+                if (!isWordChar(token.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return _mat.usePattern(p).reset(token).matches();
+    }
+
     /** Print an appropriate prompt, if there is a prompter: either ">"
      *  when expecting the start of a new command, or "..."
      *  otherwise. */
@@ -103,7 +285,7 @@ class Tokenizer {
         String token = next();
         if (token == null) {
             throw error("unexpected end of input");
-        } else if (!_mat.usePattern(p).reset(token).matches()) {
+        } else if (!matches(p, token)) {
             throw error("unexpected token: '%s'", token);
         }
         return token;
@@ -145,8 +327,7 @@ class Tokenizer {
     /** Return true iff the next token matches P.  Throws DBException on
      *  encountering a lexical error. */
     boolean nextIs(Pattern p) {
-        String token = peek();
-        return _mat.usePattern(p).reset(token).matches();
+        return matches(p, peek());
     }
 
     /** Return true iff the next token equals P.  Throws DBException on
@@ -180,6 +361,12 @@ class Tokenizer {
         _k = 0;
     }
 
+    /** Return the tokens read since the last flush or flushToSemi
+     *  operation (or the beginning of input). */
+    List<String> tokens() {
+        return new ArrayList<>(_buffer.subList(0, _k));
+    }
+
     /** Set the rewind point to the current position. */
     void flush() {
         _buffer.subList(0, _k).clear();
@@ -209,8 +396,18 @@ class Tokenizer {
 
     /** Matcher used for pattern matching. */
     private Matcher _mat;
-    /** The character input source. */
-    private Scanner _input;
+    /** The character input source, or null if reading from _lines. */
+    private Reader _reader;
+    /** The source of lines of input, or null if reading from
+     *  _reader. */
+    private Scanner _lines;
+    /** Characters read from the input. */
+    private char[] _chars;
+    /** The positions in _chars of the next unread character, and just
+     *  past the last character read. */
+    private int _pos, _limit;
+    /** True once the end of the input has been reached. */
+    private boolean _eof;
     /** All tokens read since the last flush or beginning of input. */
     private ArrayList<String> _buffer;
     /** Output for prompts.  Null if prompts not used. */
@@ -0,0 +1,99 @@
+package db61b;
+
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+import static db61b.Utils.*;
+
+/** The types of column values.  Values are always held as Strings, but
+ *  the values of numeric columns must be numerals, and are compared as
+ *  numbers.
+ *  @author Bo Liu
+ */
+enum Type implements Comparator<String> {
+    /** Arbitrary text, compared lexicographically. */
+    STRING,
+    /** Integers that fit in a long, held in canonical decimal form. */
+    INT,
+    /** Floating-point numbers, written as decimal numerals with an
+     *  optional exponent, and held in the canonical form given by
+     *  Double.toString. */
+    DOUBLE;
+
+    /** The numerals accepted as DOUBLE values. */
+    private static final Pattern DECIMAL =
+        Pattern.compile("[-+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?");
+
+    /** Return the Type named NAME ("string", "int", or "double"). */
+    static Type parse(String name) {
+        for (Type type : values()) {
+            if (type.toString().equals(name)) {
+                return type;
+            }
+        }
+        throw error("unknown type: %s", name);
+    }
+
+    /** Return the type in which values of types TYPE1 and TYPE2 are
+     *  compared with each other: numerically if both are numeric, and
+     *  otherwise as text. */
+    static Type common(Type type1, Type type2) {
+        if (type1 == type2) {
+            return type1;
+        } else if (type1 == STRING || type2 == STRING) {
+            return STRING;
+        } else {
+            return DOUBLE;
+        }
+    }
+
+    /** Return VALUE in the form in which it is stored in a column of this
+     *  type, throwing a DBException if it is not a valid value. */
+    String canonical(String value) {
+        try {
+            switch (this) {
+            case INT:
+                long n = Long.parseLong(value.trim());
+                String s = Long.toString(n);
+                return s.equals(value) ? value : s;
+            case DOUBLE:
+                if (!DECIMAL.matcher(value).matches()) {
+                    throw new NumberFormatException();
+                }
+                double x = Double.parseDouble(value);
+                if (Double.isInfinite(x)) {
+                    throw new NumberFormatException();
+                }
+                String t = Double.toString(x == 0 ? 0.0 : x);
+                return t.equals(value) ? value : t;
+            default:
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            throw error("bad %s value: '%s'", this, value);
+        }
+    }
+
+    /** Compare the valid values VALUE1 and VALUE2 of this type. */
+    @Override
+    public int compare(String value1, String value2) {
+        if (value1 == value2) {
+            return 0;
+        }
+        switch (this) {
+        case INT:
+            return Long.compare(Long.parseLong(value1),
+                                Long.parseLong(value2));
+        case DOUBLE:
+            return Double.compare(Double.parseDouble(value1),
+                                  Double.parseDouble(value2));
+        default:
+            return value1.compareTo(value2);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
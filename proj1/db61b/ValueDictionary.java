@@ -0,0 +1,52 @@
+package db61b;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/** The values shared by all the tables of a database.  Each table
+ *  interns the values of its columns that repeat often, such as
+ *  department names or course codes, in a Dictionary of its own; those
+ *  dictionaries in turn take each new value from here, so that equal
+ *  values in different tables are one String, and most tests of their
+ *  equality succeed on identity.  Values are held weakly, so that those
+ *  of tables that have been dropped or replaced do not stay here.
+ *  Several threads may use a ValueDictionary at once.
+ *  @author Bo Liu
+ */
+class ValueDictionary {
+
+    /** Return the value in THIS equal to VALUE, adding VALUE if there is
+     *  none. */
+    synchronized String intern(String value) {
+        String old = get(value);
+        if (old != null) {
+            return old;
+        }
+        _values.put(value, new WeakReference<>(value));
+        return value;
+    }
+
+    /** Return the value in THIS equal to VALUE, or VALUE itself if there
+     *  is none, without adding it. */
+    synchronized String lookup(String value) {
+        String old = get(value);
+        return old == null ? value : old;
+    }
+
+    /** Return the number of distinct values in THIS. */
+    synchronized int size() {
+        return _values.size();
+    }
+
+    /** Return the value in THIS equal to VALUE, or null if there is
+     *  none. */
+    private String get(String value) {
+        WeakReference<String> ref = _values.get(value);
+        return ref == null ? null : ref.get();
+    }
+
+    /** The values, each mapped to a weak reference to itself, so that
+     *  the map does not keep them alive. */
+    private final WeakHashMap<String, WeakReference<String>> _values =
+        new WeakHashMap<>();
+}
@@ -0,0 +1,134 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import static db61b.Utils.*;
+
+/** A materialized view: a table holding the result of a select query,
+ *  which is kept up to date as rows are added to the tables the query
+ *  reads.  The query may join, filter and project, but not group, order
+ *  or limit, so that its result only grows as its tables do.  When rows
+ *  are added to one of those tables, the query is run again with a
+ *  table of just the new rows in its place, and the result is added to
+ *  the view; when a single row is added, it is also compared with the
+ *  columns it shares with the other tables, so that their indexes can
+ *  find the rows it joins with.
+ *  @author Bo Liu
+ */
+class View {
+
+    /** A view of the result of QUERY, which is computed at once, and
+     *  then maintained until the view is detached. */
+    View(Query query) {
+        if (!query.isMonotonic()) {
+            throw error("materialized views cannot group, order or limit");
+        }
+        _query = query;
+        _table = new Table(query.titles(), query.types());
+        _table.setView(this);
+        _bases = new LinkedHashSet<>();
+        Collections.addAll(_bases, query.tables());
+        List<Lock> locks = Table.locks(_bases, Collections.emptySet());
+        Table.lock(locks);
+        try {
+            Pipeline.Operator<Row> rows = query.rows();
+            try {
+                while (rows.hasNext()) {
+                    _table.add(rows.next());
+                }
+            } finally {
+                rows.close();
+            }
+            for (Table base : _bases) {
+                base.addView(this);
+            }
+        } finally {
+            Table.unlock(locks);
+        }
+    }
+
+    /** Return the table holding my rows. */
+    Table table() {
+        return _table;
+    }
+
+    /** Stop maintaining my table. */
+    void detach() {
+        List<Lock> locks = Table.locks(_bases, Collections.emptySet());
+        Table.lock(locks);
+        try {
+            for (Table base : _bases) {
+                base.removeView(this);
+            }
+        } finally {
+            Table.unlock(locks);
+        }
+    }
+
+    /** Add to my table the rows of my result that include any of ROWS,
+     *  which have just been added to BASE. */
+    void added(Table base, List<Row> rows) {
+        String[] titles = new String[base.columns()];
+        Type[] types = new Type[titles.length];
+        for (int c = 0; c < titles.length; c += 1) {
+            titles[c] = base.getTitle(c);
+            types[c] = base.getType(c);
+        }
+        Table delta = new Table(titles, types);
+        delta.addAll(rows);
+        Table[] tables = _query.tables();
+        ArrayList<Row> result = new ArrayList<>();
+        for (int slot = 0; slot < tables.length; slot += 1) {
+            if (tables[slot] != base) {
+                continue;
+            }
+            ArrayList<Condition> keys = new ArrayList<>();
+            if (rows.size() == 1) {
+                Row row = rows.get(0);
+                for (int other = 0; other < tables.length; other += 1) {
+                    if (other == slot) {
+                        continue;
+                    }
+                    for (int c = 0; c < titles.length; c += 1) {
+                        int k = tables[other].findColumn(titles[c]);
+                        if (k != -1 && tables[other].getType(k) == types[c]) {
+                            keys.add(new Condition(
+                                new Column(titles[c], other, tables[other]),
+                                "=", row.get(c)));
+                        }
+                    }
+                }
+            }
+            Pipeline.Operator<Row> added =
+                _query.replace(slot, delta, keys).rows();
+            try {
+                while (added.hasNext()) {
+                    result.add(added.next());
+                }
+            } finally {
+                added.close();
+            }
+        }
+        _table.addAll(result);
+    }
+
+    /** Add to WRITTEN my table and the tables of the views that adding
+     *  rows to it changes, and to READ the tables that those views and I
+     *  read. */
+    void dependents(Set<Table> written, Set<Table> read) {
+        read.addAll(_bases);
+        _table.dependents(written, read);
+    }
+
+    /** The query whose result I hold. */
+    private Query _query;
+    /** The table holding my rows. */
+    private Table _table;
+    /** The distinct tables that _query reads. */
+    private Set<Table> _bases;
+}
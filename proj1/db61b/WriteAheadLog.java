@@ -0,0 +1,275 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import static db61b.Utils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The write-ahead log of a database, which makes rows added to its
+ *  tables durable without storing the tables.  The rows added to the
+ *  table stored in NAME.db since it was last stored are appended to
+ *  NAME.log, one per line in the format of a .db file.  Loading NAME.db
+ *  replays NAME.log, and storing it empties NAME.log.
+ *
+ *  Only the tables that were loaded from or stored to a file are
+ *  logged.  A table made by create is not logged until it is first
+ *  stored, and a crash before then loses all of its rows.
+ *
+ *  Appended rows are buffered and committed in groups: the logs are
+ *  flushed and forced to disk once BATCH rows are pending, by a
+ *  background timer every INTERVAL milliseconds, at the end of a
+ *  statement if INTERVAL milliseconds have passed since the last commit,
+ *  at quit or the end of the input, and when the log is closed.  A
+ *  statement may therefore finish before its rows are durable.  A crash
+ *  loses at most the rows logged in the last INTERVAL milliseconds, and
+ *  a row that was only partly written is ignored, and cut from the log,
+ *  when the log is replayed.  The logs of a database may be used by
+ *  several threads at once, and are closed when the session of db61b
+ *  that uses them ends, or when a server's last session has ended.
+ *  @author Bo Liu
+ */
+class WriteAheadLog {
+
+    /** True iff databases keep write-ahead logs.  Set with the property
+     *  db61b.wal. */
+    static final boolean ENABLED = Boolean.getBoolean("db61b.wal");
+    /** Maximum number of rows appended between commits.  Set with the
+     *  property db61b.walBatch. */
+    static final int BATCH = Integer.getInteger("db61b.walBatch", 1 << 10);
+    /** Milliseconds between periodic commits.  Set with the property
+     *  db61b.walInterval. */
+    static final int INTERVAL = Integer.getInteger("db61b.walInterval", 100);
+    /** Size of the buffer of each log. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** An empty write-ahead log, which commits pending rows every
+     *  INTERVAL milliseconds until it is closed. */
+    WriteAheadLog() {
+        _logs = new HashMap<>();
+        _lastCommit = System.currentTimeMillis();
+        _timer = new Timer("db61b-wal", true);
+        _timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    commit(true);
+                } catch (DBException e) {
+                    /* Reported by the next commit of a statement. */
+                }
+            }
+        }, Math.max(1, INTERVAL), Math.max(1, INTERVAL));
+    }
+
+    /** Commit all pending rows, stop committing them periodically, and
+     *  close all logs. */
+    synchronized void close() {
+        _timer.cancel();
+        try {
+            commit(true);
+        } finally {
+            for (Log log : _logs.values()) {
+                log.close();
+            }
+            _logs.clear();
+        }
+    }
+
+    /** Return the log of the rows added to the table stored in NAME.db,
+     *  opening NAME.log if needed. */
+    synchronized Log open(String name) {
+        Log log = _logs.get(name);
+        if (log == null) {
+            try {
+                log = new Log(name);
+            } catch (IOException e) {
+                throw error("could not open %s.log", name);
+            }
+            _logs.put(name, log);
+        }
+        return log;
+    }
+
+    /** Commit all pending rows if FORCE, if there are BATCH of them, or
+     *  if INTERVAL milliseconds have passed since the last commit. */
+    synchronized void commit(boolean force) {
+        long now = System.currentTimeMillis();
+        boolean due = force || _pending >= BATCH
+            || now - _lastCommit >= INTERVAL;
+        if (_pending == 0 || !due) {
+            return;
+        }
+        for (Log log : _logs.values()) {
+            log.sync();
+        }
+        _pending = 0;
+        _lastCommit = now;
+    }
+
+    /** Add to TABLE the rows recorded in NAME.log, if it exists.  A
+     *  final row that was not completely written is ignored, and cut
+     *  from the file, so that rows appended later start on a line of
+     *  their own. */
+    static void replay(String name, Table table) {
+        File file = new File(name + ".log");
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            InputStream input =
+                new BufferedInputStream(new FileInputStream(file),
+                                        BUFFER_SIZE);
+            long complete = 0;
+            try {
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long offset = 0;
+                for (int b = input.read(); b != -1; b = input.read()) {
+                    offset += 1;
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    complete = offset;
+                    String[] values = line.toString("UTF-8").split(",", -1);
+                    if (values.length != table.columns()) {
+                        throw error("corrupted log file %s.log", name);
+                    }
+                    table.add(new Row(values));
+                    line.reset();
+                }
+            } finally {
+                input.close();
+            }
+            if (complete < file.length()) {
+                FileChannel channel =
+                    FileChannel.open(file.toPath(),
+                                     StandardOpenOption.WRITE);
+                try {
+                    channel.truncate(complete);
+                    channel.force(false);
+                } finally {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            throw error("problem reading from %s.log", name);
+        }
+    }
+
+    /** The log of the rows added to one table. */
+    class Log {
+        /** The log in NAME.log, which is opened for appending. */
+        Log(String name) throws IOException {
+            _name = name;
+            FileOutputStream file = new FileOutputStream(name + ".log", true);
+            _channel = file.getChannel();
+            _output = new BufferedWriter(new OutputStreamWriter(file, UTF_8),
+                                         BUFFER_SIZE);
+        }
+
+        /** Append ROW, committing all logs if BATCH rows are now
+         *  pending. */
+        void append(Row row) {
+            synchronized (WriteAheadLog.this) {
+                write(row);
+            }
+        }
+
+        /** Append ROW, committing all logs if BATCH rows are now
+         *  pending, while holding the lock of my WriteAheadLog. */
+        private void write(Row row) {
+            try {
+                for (int k = 0; k < row.size(); k += 1) {
+                    if (k > 0) {
+                        _output.write(',');
+                    }
+                    _output.write(row.get(k));
+                }
+                _output.write('\n');
+            } catch (IOException e) {
+                throw error("could not write %s.log", _name);
+            }
+            _dirty = true;
+            _pending += 1;
+            if (_pending >= BATCH) {
+                commit(true);
+            }
+        }
+
+        /** Discard my contents, once my table has been stored. */
+        void clear() {
+            synchronized (WriteAheadLog.this) {
+                truncate();
+            }
+        }
+
+        /** Discard my contents, while holding the lock of my
+         *  WriteAheadLog. */
+        private void truncate() {
+            try {
+                _output.flush();
+                _channel.truncate(0);
+                _channel.force(false);
+            } catch (IOException e) {
+                throw error("could not truncate %s.log", _name);
+            }
+            _dirty = false;
+        }
+
+        /** Close my file, while holding the lock of my WriteAheadLog.
+         *  My pending rows must already have been written to disk. */
+        private void close() {
+            try {
+                _output.close();
+            } catch (IOException e) {
+                throw error("could not close %s.log", _name);
+            }
+        }
+
+        /** Write my pending rows to disk, while holding the lock of my
+         *  WriteAheadLog. */
+        private void sync() {
+            if (!_dirty) {
+                return;
+            }
+            try {
+                _output.flush();
+                _channel.force(false);
+            } catch (IOException e) {
+                throw error("could not write %s.log", _name);
+            }
+            _dirty = false;
+        }
+
+        /** Name of my table. */
+        private String _name;
+        /** The log file. */
+        private FileChannel _channel;
+        /** Buffers rows appended to the log file. */
+        private Writer _output;
+        /** True iff rows have been appended since the last sync. */
+        private boolean _dirty;
+    }
+
+    /** The logs opened so far, by table name. */
+    private HashMap<String, Log> _logs;
+    /** Commits pending rows periodically. */
+    private Timer _timer;
+    /** Number of rows appended since the last commit. */
+    private int _pending;
+    /** Time of the last commit, in milliseconds. */
+    private long _lastCommit;
+}